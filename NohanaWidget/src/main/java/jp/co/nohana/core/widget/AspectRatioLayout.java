@@ -0,0 +1,209 @@
+package jp.co.nohana.core.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.util.AttributeSet;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+/**
+ * This is a lightweight container that keeps its aspect ratio, such as a square cell of {@link android.widget.GridView}.
+ * The size is driven by the width if it is given, otherwise by the height, and the other side follows the ratio.
+ * Children are stacked like {@link android.widget.FrameLayout}, with {@link android.widget.FrameLayout.LayoutParams#gravity},
+ * and each child is measured only once per pass.
+ *
+ * The last measurement is cached, so measuring again with the same size does not measure the children
+ * until the layout is requested or forced again.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public class AspectRatioLayout extends ViewGroup {
+    private static final float DEFAULT_ASPECT_RATIO = 1f;
+    private float mAspectRatio;
+    private boolean mMeasureCacheValid;
+    private int mCachedWidth;
+    private int mCachedHeight;
+
+    public AspectRatioLayout(Context context) {
+        this(context, null);
+    }
+
+    public AspectRatioLayout(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public AspectRatioLayout(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+
+        TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.AspectRatioLayout, defStyle, 0);
+        mAspectRatio = array.getFloat(R.styleable.AspectRatioLayout_aspectRatio, DEFAULT_ASPECT_RATIO);
+        array.recycle();
+        if (mAspectRatio <= 0) {
+            throw new IllegalArgumentException("aspect ratio must be positive: " + mAspectRatio);
+        }
+    }
+
+    public float getAspectRatio() {
+        return mAspectRatio;
+    }
+
+    /**
+     * @param aspectRatio the width divided by the height.
+     */
+    public void setAspectRatio(float aspectRatio) {
+        if (aspectRatio <= 0) {
+            throw new IllegalArgumentException("aspect ratio must be positive: " + aspectRatio);
+        }
+        if (aspectRatio == mAspectRatio) {
+            return;
+        }
+        mAspectRatio = aspectRatio;
+        requestLayout();
+    }
+
+    @Override
+    public void requestLayout() {
+        // this view itself or a descendant has been changed
+        mMeasureCacheValid = false;
+        super.requestLayout();
+    }
+
+    @Override
+    public void forceLayout() {
+        // forced by the traversals such as on configuration changes, without requesting the layout
+        mMeasureCacheValid = false;
+        super.forceLayout();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int verticalPadding = getPaddingTop() + getPaddingBottom();
+        int contentWidth;
+        int contentHeight;
+        if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            contentWidth = Math.max(0, MeasureSpec.getSize(widthMeasureSpec) - horizontalPadding);
+            contentHeight = Math.round(contentWidth / mAspectRatio);
+        } else if (MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            contentHeight = Math.max(0, MeasureSpec.getSize(heightMeasureSpec) - verticalPadding);
+            contentWidth = Math.round(contentHeight * mAspectRatio);
+        } else {
+            contentWidth = Math.max(0, getSuggestedMinimumWidth() - horizontalPadding);
+            contentHeight = Math.round(contentWidth / mAspectRatio);
+        }
+        int width = contentWidth + horizontalPadding;
+        int height = contentHeight + verticalPadding;
+
+        if (!mMeasureCacheValid || width != mCachedWidth || height != mCachedHeight) {
+            // the padding and the margins are subtracted by measureChildWithMargins
+            int childWidthSpec = MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY);
+            int childHeightSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
+            for (int i = 0; i < getChildCount(); i++) {
+                View child = getChildAt(i);
+                if (child.getVisibility() != GONE) {
+                    measureChildWithMargins(child, childWidthSpec, 0, childHeightSpec, 0);
+                }
+            }
+            mCachedWidth = width;
+            mCachedHeight = height;
+            mMeasureCacheValid = true;
+        }
+        setMeasuredDimension(width, height);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_MEASURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        int parentLeft = getPaddingLeft();
+        int parentTop = getPaddingTop();
+        int parentRight = r - l - getPaddingRight();
+        int parentBottom = b - t - getPaddingBottom();
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            LayoutParams params = (LayoutParams) child.getLayoutParams();
+            int width = child.getMeasuredWidth();
+            int height = child.getMeasuredHeight();
+            int gravity = params.gravity == -1 ? Gravity.TOP | Gravity.LEFT : params.gravity;
+            int horizontalGravity = gravity & Gravity.HORIZONTAL_GRAVITY_MASK;
+            int verticalGravity = gravity & Gravity.VERTICAL_GRAVITY_MASK;
+
+            int childLeft;
+            if (horizontalGravity == Gravity.CENTER_HORIZONTAL) {
+                childLeft = parentLeft + (parentRight - parentLeft - width) / 2 + params.leftMargin - params.rightMargin;
+            } else if (horizontalGravity == Gravity.RIGHT) {
+                childLeft = parentRight - width - params.rightMargin;
+            } else {
+                childLeft = parentLeft + params.leftMargin;
+            }
+            int childTop;
+            if (verticalGravity == Gravity.CENTER_VERTICAL) {
+                childTop = parentTop + (parentBottom - parentTop - height) / 2 + params.topMargin - params.bottomMargin;
+            } else if (verticalGravity == Gravity.BOTTOM) {
+                childTop = parentBottom - height - params.bottomMargin;
+            } else {
+                childTop = parentTop + params.topMargin;
+            }
+            child.layout(childLeft, childTop, childLeft + width, childTop + height);
+        }
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_LAYOUT, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+
+    @Override
+    public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new LayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof LayoutParams;
+    }
+
+    @Override
+    protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof MarginLayoutParams ? new LayoutParams((MarginLayoutParams) p) : new LayoutParams(p);
+    }
+
+    /**
+     * Same as {@link android.widget.FrameLayout.LayoutParams}, so the children accept layout_gravity.
+     */
+    public static class LayoutParams extends FrameLayout.LayoutParams {
+        public LayoutParams(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public LayoutParams(ViewGroup.LayoutParams source) {
+            super(source);
+        }
+
+        public LayoutParams(MarginLayoutParams source) {
+            super(source);
+        }
+    }
+}
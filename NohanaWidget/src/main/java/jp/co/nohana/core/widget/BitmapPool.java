@@ -0,0 +1,128 @@
+package jp.co.nohana.core.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Library-wide pool of reusable mutable bitmaps, keyed by size and config.
+ * Widgets borrow bitmaps with {@link #acquire(int, int, android.graphics.Bitmap.Config)} and give them back with {@link #release(android.graphics.Bitmap)}
+ * when they are detached or recycled, so that identical bitmaps are reused instead of being allocated and collected again and again.
+ * The pool keeps released bitmaps up to its byte budget, and drops the least recently released ones beyond it.
+ * This class is thread safe.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public final class BitmapPool {
+    private static final int DEFAULT_MAX_SIZE_BYTES = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 4 * 1024 * 1024);
+    private static final BitmapPool INSTANCE = new BitmapPool(DEFAULT_MAX_SIZE_BYTES);
+    private final Map<Long, List<Bitmap>> mPool = new HashMap<Long, List<Bitmap>>();
+    private final LinkedList<Bitmap> mReleaseOrder = new LinkedList<Bitmap>();
+    private int mMaxSize;
+    private int mSize;
+
+    private BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    public static BitmapPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Changes the byte budget of the pool. Pooled bitmaps beyond the new budget are dropped.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("max size must not be negative: " + maxSize);
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the total bytes of the pooled bitmaps.
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Borrows a mutable bitmap cleared to transparent, reusing a pooled one if available.
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = poll(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Gives the bitmap back to the pool. The caller must not use the bitmap any more.
+     * Immutable, recycled or unknown config bitmaps are just dropped.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+            return;
+        }
+        int size = sizeOf(bitmap);
+        if (size > mMaxSize) {
+            return;
+        }
+        Long key = keyOf(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        List<Bitmap> bitmaps = mPool.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<Bitmap>();
+            mPool.put(key, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        mReleaseOrder.addLast(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Drops all pooled bitmaps.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private synchronized Bitmap poll(int width, int height, Bitmap.Config config) {
+        List<Bitmap> bitmaps = mPool.get(keyOf(width, height, config));
+        if (bitmaps == null || bitmaps.isEmpty()) {
+            return null;
+        }
+        Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+        mReleaseOrder.remove(bitmap);
+        mSize -= sizeOf(bitmap);
+        return bitmap;
+    }
+
+    private void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mReleaseOrder.isEmpty()) {
+            Bitmap eldest = mReleaseOrder.removeFirst();
+            mPool.get(keyOf(eldest.getWidth(), eldest.getHeight(), eldest.getConfig())).remove(eldest);
+            mSize -= sizeOf(eldest);
+        }
+    }
+
+    private static Long keyOf(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+
+    private static int sizeOf(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,327 @@
+package jp.co.nohana.core.widget;
+
+import android.util.SparseIntArray;
+import android.view.View;
+import android.widget.Checkable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Selection engine shared by the checkable groups such as {@link CompoundImageViewGroup} and {@link CompoundRelativeLayoutViewGroup}.
+ * The host group forwards its hierarchy changes and child checked state changes to this controller,
+ * and this controller keeps the checked state index, enforces the choice mode, and notifies the changes per batch.
+ * Each toggle is handled in constant time regardless of the number of children.
+ * The children are accessed through {@link Host}, so this controller does not depend on a view hierarchy.
+ * @param <T> checkable child type that the host group manages.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public class CheckableGroupController<T extends Checkable> {
+    /**
+     * At most one child can be checked. Checking a child unchecks the previously checked one.
+     */
+    public static final int CHOICE_MODE_SINGLE = 1;
+    /**
+     * Any number of children can be checked.
+     */
+    public static final int CHOICE_MODE_MULTIPLE = 2;
+    /**
+     * At most {@link #getChoiceLimit()} children can be checked. Checking a child beyond the limit is rejected.
+     */
+    public static final int CHOICE_MODE_MULTIPLE_LIMITED = 3;
+
+    private final Host mHost;
+    private final Class<T> mChildType;
+    private final Callback mCallback;
+    private final CheckedStateIndex<Object> mCheckedIndex = new CheckedStateIndex<Object>();
+    private int mChoiceMode = CHOICE_MODE_MULTIPLE;
+    private int mChoiceLimit = Integer.MAX_VALUE;
+    private T mLastChecked;
+
+    public CheckableGroupController(Host host, Class<T> childType, Callback callback) {
+        mHost = host;
+        mChildType = childType;
+        mCallback = callback;
+    }
+
+    public int getChoiceMode() {
+        return mChoiceMode;
+    }
+
+    /**
+     * Changes the choice mode. Children checked beyond the new mode are unchecked, keeping the ones in front.
+     * @param choiceMode one of {@link #CHOICE_MODE_SINGLE}, {@link #CHOICE_MODE_MULTIPLE} or {@link #CHOICE_MODE_MULTIPLE_LIMITED}.
+     */
+    public void setChoiceMode(int choiceMode) {
+        if (choiceMode != CHOICE_MODE_SINGLE && choiceMode != CHOICE_MODE_MULTIPLE && choiceMode != CHOICE_MODE_MULTIPLE_LIMITED) {
+            throw new IllegalArgumentException("unknown choice mode: " + choiceMode);
+        }
+        mChoiceMode = choiceMode;
+        trimToChoiceMode();
+    }
+
+    public int getChoiceLimit() {
+        return mChoiceLimit;
+    }
+
+    /**
+     * Sets the maximum number of checked children in {@link #CHOICE_MODE_MULTIPLE_LIMITED}.
+     */
+    public void setChoiceLimit(int choiceLimit) {
+        if (choiceLimit < 0) {
+            throw new IllegalArgumentException("choice limit must not be negative: " + choiceLimit);
+        }
+        mChoiceLimit = choiceLimit;
+        trimToChoiceMode();
+    }
+
+    public int getCheckedCount() {
+        return mCheckedIndex.getCheckedCount();
+    }
+
+    public boolean isChecked(int index) {
+        return mCheckedIndex.isChecked(index);
+    }
+
+    /**
+     * @return the first checked position that is equal to or after the given position, or -1 if nothing is checked there.
+     */
+    public int nextCheckedPosition(int from) {
+        return mCheckedIndex.nextCheckedPosition(from);
+    }
+
+    public List<T> getCheckedViews() {
+        List<T> views = new ArrayList<T>(mCheckedIndex.getCheckedCount());
+        for (int i = mCheckedIndex.nextCheckedPosition(0); i >= 0; i = mCheckedIndex.nextCheckedPosition(i + 1)) {
+            views.add(mChildType.cast(mHost.getChildAt(i)));
+        }
+        return views;
+    }
+
+    public List<Integer> getCheckedIndices() {
+        List<Integer> indices = new ArrayList<Integer>(mCheckedIndex.getCheckedCount());
+        for (int i = mCheckedIndex.nextCheckedPosition(0); i >= 0; i = mCheckedIndex.nextCheckedPosition(i + 1)) {
+            indices.add(i);
+        }
+        return indices;
+    }
+
+    public void uncheckAll() {
+        beginBatch();
+        for (int i = mCheckedIndex.nextCheckedPosition(0); i >= 0; i = mCheckedIndex.nextCheckedPosition(i + 1)) {
+            getCheckableAt(i).setChecked(false);
+        }
+        commit();
+    }
+
+    /**
+     * Checks all children as far as the choice mode allows.
+     */
+    public void checkAll() {
+        beginBatch();
+        for (int i = 0; i < mHost.getChildCount(); i++) {
+            T child = getCheckableAt(i);
+            if (child != null) {
+                child.setChecked(true);
+            }
+        }
+        commit();
+    }
+
+    /**
+     * Checks the children at the given indices and unchecks all the others, then notifies the change at once.
+     * Indices that do not point to a checkable child are ignored.
+     * The choice mode is applied in the order of the indices, so the last index wins in {@link #CHOICE_MODE_SINGLE},
+     * and indices beyond the limit are ignored in {@link #CHOICE_MODE_MULTIPLE_LIMITED}.
+     */
+    public void setCheckedIndices(int[] indices) {
+        beginBatch();
+        BitSet checked = new BitSet();
+        for (int index : indices) {
+            if (getCheckableAt(index) != null) {
+                checked.set(index);
+            }
+        }
+        for (int i = mCheckedIndex.nextCheckedPosition(0); i >= 0; i = mCheckedIndex.nextCheckedPosition(i + 1)) {
+            if (!checked.get(i)) {
+                getCheckableAt(i).setChecked(false);
+            }
+        }
+        for (int index : indices) {
+            if (checked.get(index)) {
+                getCheckableAt(index).setChecked(true);
+            }
+        }
+        commit();
+    }
+
+    /**
+     * Starts a batch of checked state changes.
+     * Changes made until the matching {@link #commit()} are notified as a single event.
+     * Batches can be nested, and only the outermost commit notifies.
+     */
+    public void beginBatch() {
+        mCheckedIndex.beginBatch();
+    }
+
+    /**
+     * Ends the batch started with {@link #beginBatch()}, and notifies the changes made in the batch if any.
+     * @throws java.lang.IllegalStateException if no batch is in progress.
+     */
+    public void commit() {
+        if (mCheckedIndex.endBatch()) {
+            mCallback.onCheckedStateChanged(mCheckedIndex.takeDelta());
+        }
+    }
+
+    /**
+     * @return the checked positions packed into words, where the bit {@code i % 64} of the word {@code i / 64} is the position {@code i}.
+     */
+    public long[] getCheckedBits() {
+        long[] bits = new long[mCheckedIndex.getCheckedCount() == 0 ? 0 : (mHost.getChildCount() + 63) / 64];
+        for (int i = mCheckedIndex.nextCheckedPosition(0); i >= 0; i = mCheckedIndex.nextCheckedPosition(i + 1)) {
+            bits[i >> 6] |= 1L << i;
+        }
+        return bits;
+    }
+
+    /**
+     * @return the ids of the checked children in the order of their positions.
+     */
+    public int[] getCheckedIds() {
+        int[] ids = new int[mCheckedIndex.getCheckedCount()];
+        int n = 0;
+        for (int i = mCheckedIndex.nextCheckedPosition(0); i >= 0; i = mCheckedIndex.nextCheckedPosition(i + 1)) {
+            ids[n++] = mHost.getChildId(i);
+        }
+        return ids;
+    }
+
+    /**
+     * Restores the checked state returned by {@link #getCheckedBits()} and {@link #getCheckedIds()} in a single batch.
+     * The children are found by their ids, and by the saved positions if they have no matching id.
+     */
+    public void restoreCheckedState(long[] checkedBits, int[] checkedIds) {
+        SparseIntArray positions = new SparseIntArray(mHost.getChildCount());
+        for (int i = mHost.getChildCount() - 1; i >= 0; i--) {
+            // the first child wins if the ids are duplicated
+            positions.put(mHost.getChildId(i), i);
+        }
+        int[] indices = new int[checkedIds.length];
+        int n = 0;
+        for (int word = 0; word < checkedBits.length; word++) {
+            for (long w = checkedBits[word]; w != 0 && n < indices.length; w &= w - 1) {
+                int position = word * 64 + Long.numberOfTrailingZeros(w);
+                int id = checkedIds[n];
+                indices[n++] = id != View.NO_ID ? positions.get(id, position) : position;
+            }
+        }
+        setCheckedIndices(n == indices.length ? indices : Arrays.copyOf(indices, n));
+    }
+
+    /**
+     * Should be called by the host when a child has been added to it at the position.
+     */
+    public void onChildAdded(Object child, int position) {
+        boolean checked = false;
+        if (mChildType.isInstance(child)) {
+            T checkable = mChildType.cast(child);
+            checked = checkable.isChecked();
+            if (checked && mChoiceMode == CHOICE_MODE_MULTIPLE_LIMITED && mCheckedIndex.getCheckedCount() >= mChoiceLimit) {
+                // the child is not indexed yet, so the callback of this change will be a no-op
+                checkable.setChecked(false);
+                checked = false;
+            }
+        }
+        mCheckedIndex.onChildAdded(child, position, checked);
+        if (checked) {
+            // an already checked child takes over the single choice
+            beginBatch();
+            onChildChecked(mChildType.cast(child));
+            commit();
+        }
+    }
+
+    /**
+     * Should be called by the host when a child is being removed from it.
+     */
+    public void onChildRemoved(Object child) {
+        if (child == mLastChecked) {
+            mLastChecked = null;
+        }
+        mCheckedIndex.onChildRemoved(child);
+    }
+
+    /**
+     * Should be called by the host when the checked state of a child has been changed.
+     */
+    public void onChildCheckedChanged(T child, boolean checked) {
+        if (checked && mChoiceMode == CHOICE_MODE_MULTIPLE_LIMITED && mCheckedIndex.getCheckedCount() >= mChoiceLimit) {
+            // reject before recording, so the reverting callback will be a no-op
+            child.setChecked(false);
+            return;
+        }
+        beginBatch();
+        if (mCheckedIndex.onChildCheckedChanged(child, checked) >= 0) {
+            if (checked) {
+                onChildChecked(child);
+            } else if (child == mLastChecked) {
+                mLastChecked = null;
+            }
+        }
+        commit();
+    }
+
+    private void onChildChecked(T child) {
+        T previous = mLastChecked;
+        mLastChecked = child;
+        if (mChoiceMode == CHOICE_MODE_SINGLE && previous != null && previous != child && previous.isChecked()) {
+            previous.setChecked(false);
+        }
+    }
+
+    private void trimToChoiceMode() {
+        int limit = mChoiceMode == CHOICE_MODE_SINGLE ? 1 : mChoiceMode == CHOICE_MODE_MULTIPLE_LIMITED ? mChoiceLimit : Integer.MAX_VALUE;
+        beginBatch();
+        int kept = 0;
+        for (int i = mCheckedIndex.nextCheckedPosition(0); i >= 0; i = mCheckedIndex.nextCheckedPosition(i + 1)) {
+            if (kept < limit) {
+                kept++;
+                continue;
+            }
+            getCheckableAt(i).setChecked(false);
+        }
+        commit();
+        int first = mCheckedIndex.nextCheckedPosition(0);
+        mLastChecked = first < 0 ? null : getCheckableAt(first);
+    }
+
+    private T getCheckableAt(int index) {
+        Object child = mHost.getChildAt(index);
+        return mChildType.isInstance(child) ? mChildType.cast(child) : null;
+    }
+
+    /**
+     * Gives the controller access to the children of the host group.
+     */
+    public static interface Host {
+        public int getChildCount();
+
+        public Object getChildAt(int index);
+
+        /**
+         * @return the id of the child at the index, or {@link android.view.View#NO_ID} if the child has no id.
+         */
+        public int getChildId(int index);
+    }
+
+    /**
+     * Receives the coalesced checked state changes to be notified by the host.
+     */
+    public static interface Callback {
+        public void onCheckedStateChanged(CheckedStateDelta delta);
+    }
+}
@@ -0,0 +1,255 @@
+package jp.co.nohana.core.widget;
+
+import android.content.Context;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.Checkable;
+import android.widget.LinearLayout;
+
+import java.util.List;
+
+/**
+ * Base of the checkable groups such as {@link CompoundImageViewGroup} and {@link CompoundRelativeLayoutViewGroup}.
+ * This layout forwards its hierarchy changes to {@link CheckableGroupController}, and delegates the choice mode, the batches and the saved state to it.
+ * Subclasses observe the checked state of their own child type, and notify the coalesced changes to their own listeners.
+ * @param <T> checkable child type that this group manages.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public abstract class CheckableGroupLayout<T extends View & Checkable> extends LinearLayout {
+    private final Class<T> mChildType;
+    private final CheckableGroupController<T> mController;
+    private final PassThroughHierarchyChangeListener mHierarchyListener;
+    private boolean mSaveChildrenEnabled = true;
+
+    protected CheckableGroupLayout(Context context, AttributeSet attrs, Class<T> childType) {
+        super(context, attrs);
+
+        mChildType = childType;
+        mController = new CheckableGroupController<T>(new ControllerHost(), childType, new ControllerCallback());
+        mHierarchyListener = new PassThroughHierarchyChangeListener();
+        super.setOnHierarchyChangeListener(mHierarchyListener);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_MEASURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        super.onLayout(changed, l, t, r, b);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_LAYOUT, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        return new CheckableGroupSavedState(super.onSaveInstanceState(), mController.getCheckedBits(), mController.getCheckedIds());
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof CheckableGroupSavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        CheckableGroupSavedState own = (CheckableGroupSavedState) state;
+        super.onRestoreInstanceState(own.getSuperState());
+        mController.restoreCheckedState(own.getCheckedBits(), own.getCheckedIds());
+    }
+
+    @Override
+    protected void dispatchSaveInstanceState(SparseArray<Parcelable> container) {
+        if (mSaveChildrenEnabled) {
+            super.dispatchSaveInstanceState(container);
+        } else {
+            dispatchFreezeSelfOnly(container);
+        }
+    }
+
+    @Override
+    protected void dispatchRestoreInstanceState(SparseArray<Parcelable> container) {
+        if (mSaveChildrenEnabled) {
+            super.dispatchRestoreInstanceState(container);
+        } else {
+            dispatchThawSelfOnly(container);
+        }
+    }
+
+    public boolean isSaveChildrenEnabled() {
+        return mSaveChildrenEnabled;
+    }
+
+    /**
+     * The checked state is saved by this group, so disable this if the children have nothing else to save.
+     * @param enabled false to save and restore the state of this group only, without the state of the children.
+     */
+    public void setSaveChildrenEnabled(boolean enabled) {
+        mSaveChildrenEnabled = enabled;
+    }
+
+    @Override
+    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
+        // the user listener is delegated to our pass-through listener
+        mHierarchyListener.mOnHierarchyChangeListener = listener;
+    }
+
+    /**
+     * @param choiceMode one of the choice mode constants of {@link CheckableGroupController}.
+     */
+    public void setChoiceMode(int choiceMode) {
+        mController.setChoiceMode(choiceMode);
+    }
+
+    public int getChoiceMode() {
+        return mController.getChoiceMode();
+    }
+
+    public void setChoiceLimit(int choiceLimit) {
+        mController.setChoiceLimit(choiceLimit);
+    }
+
+    public int getChoiceLimit() {
+        return mController.getChoiceLimit();
+    }
+
+    public int getCheckedCount() {
+        return mController.getCheckedCount();
+    }
+
+    public List<T> getCheckedViews() {
+        return mController.getCheckedViews();
+    }
+
+    public List<Integer> getCheckedIndices() {
+        return mController.getCheckedIndices();
+    }
+
+    public void uncheckAll() {
+        mController.uncheckAll();
+    }
+
+    public void checkAll() {
+        mController.checkAll();
+    }
+
+    /**
+     * Checks the children at the given indices and unchecks all the others, then notifies the change at once.
+     * @see CheckableGroupController#setCheckedIndices(int[])
+     */
+    public void setCheckedIndices(int[] indices) {
+        mController.setCheckedIndices(indices);
+    }
+
+    /**
+     * Starts a batch of checked state changes.
+     * Changes made until the matching {@link #commit()} are notified to the listeners as a single event.
+     * Batches can be nested, and only the outermost commit notifies.
+     */
+    public void beginBatch() {
+        mController.beginBatch();
+    }
+
+    /**
+     * Ends the batch started with {@link #beginBatch()}, and notifies the changes made in the batch if any.
+     * @throws java.lang.IllegalStateException if no batch is in progress.
+     */
+    public void commit() {
+        mController.commit();
+    }
+
+    public boolean isChecked(int index) {
+        return mController.isChecked(index);
+    }
+
+    /**
+     * Should be called by the subclass when the checked state of a child has been changed.
+     */
+    protected void onChildCheckedChanged(T child, boolean checked) {
+        mController.onChildCheckedChanged(child, checked);
+    }
+
+    /**
+     * Called when a checkable child has been added, to start observing its checked state.
+     */
+    protected abstract void onCheckableChildAdded(T child);
+
+    /**
+     * Called when a checkable child is being removed, to stop observing its checked state.
+     */
+    protected abstract void onCheckableChildRemoved(T child);
+
+    /**
+     * Called with the coalesced checked state changes of a single toggle or a batch, to notify the listeners.
+     */
+    protected abstract void onCheckedStateChanged(CheckedStateDelta delta);
+
+    private class ControllerHost implements CheckableGroupController.Host {
+        @Override
+        public int getChildCount() {
+            return CheckableGroupLayout.this.getChildCount();
+        }
+
+        @Override
+        public Object getChildAt(int index) {
+            return CheckableGroupLayout.this.getChildAt(index);
+        }
+
+        @Override
+        public int getChildId(int index) {
+            return CheckableGroupLayout.this.getChildAt(index).getId();
+        }
+    }
+
+    private class ControllerCallback implements CheckableGroupController.Callback {
+        @Override
+        public void onCheckedStateChanged(CheckedStateDelta delta) {
+            CheckableGroupLayout.this.onCheckedStateChanged(delta);
+        }
+    }
+
+    private class PassThroughHierarchyChangeListener implements OnHierarchyChangeListener {
+        private OnHierarchyChangeListener mOnHierarchyChangeListener;
+
+        @Override
+        public void onChildViewAdded(View parent, View child) {
+            if (parent == CheckableGroupLayout.this) {
+                if (mChildType.isInstance(child)) {
+                    onCheckableChildAdded(mChildType.cast(child));
+                }
+                int last = getChildCount() - 1;
+                // appended on inflation, so avoid searching the children
+                mController.onChildAdded(child, getChildAt(last) == child ? last : indexOfChild(child));
+            }
+
+            if (mOnHierarchyChangeListener != null) {
+                mOnHierarchyChangeListener.onChildViewAdded(parent, child);
+            }
+        }
+
+        @Override
+        public void onChildViewRemoved(View parent, View child) {
+            if (parent == CheckableGroupLayout.this) {
+                if (mChildType.isInstance(child)) {
+                    onCheckableChildRemoved(mChildType.cast(child));
+                }
+                mController.onChildRemoved(child);
+            }
+
+            if (mOnHierarchyChangeListener != null) {
+                mOnHierarchyChangeListener.onChildViewRemoved(parent, child);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package jp.co.nohana.core.widget;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.view.View;
+
+/**
+ * Saved state of the checkable groups, holding the checked positions as a packed bitset and the ids of the checked children.
+ * The ids are used to find the children on restore, and the positions are used for the children without a matching id.
+ * @author nohana Team
+ */
+class CheckableGroupSavedState extends View.BaseSavedState {
+    @SuppressWarnings("unused")
+    public static final Creator<CheckableGroupSavedState> CREATOR = new Creator<CheckableGroupSavedState>() {
+        @Override
+        public CheckableGroupSavedState[] newArray(int size) {
+            return new CheckableGroupSavedState[size];
+        }
+
+        @Override
+        public CheckableGroupSavedState createFromParcel(Parcel source) {
+            return new CheckableGroupSavedState(source);
+        }
+    };
+    private final long[] mCheckedBits;
+    private final int[] mCheckedIds;
+
+    public CheckableGroupSavedState(Parcel source) {
+        super(source);
+        mCheckedBits = source.createLongArray();
+        mCheckedIds = source.createIntArray();
+    }
+
+    public CheckableGroupSavedState(Parcelable superState, long[] checkedBits, int[] checkedIds) {
+        super(superState);
+        mCheckedBits = checkedBits;
+        mCheckedIds = checkedIds;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        super.writeToParcel(dest, flags);
+        dest.writeLongArray(mCheckedBits);
+        dest.writeIntArray(mCheckedIds);
+    }
+
+    /**
+     * @return the checked positions, where the bit {@code i % 64} of the word {@code i / 64} is the position {@code i}.
+     */
+    public long[] getCheckedBits() {
+        return mCheckedBits;
+    }
+
+    /**
+     * @return the ids of the checked children in the order of their positions.
+     */
+    public int[] getCheckedIds() {
+        return mCheckedIds;
+    }
+}
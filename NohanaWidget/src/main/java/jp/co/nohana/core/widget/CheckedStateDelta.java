@@ -0,0 +1,36 @@
+package jp.co.nohana.core.widget;
+
+/**
+ * Describes the positions whose checked state has been changed by a single toggle or a batch of changes in a checkable group.
+ * Positions are child positions in the group after the change has been applied.
+ * A position that is checked and then unchecked again in the same batch is not contained in either side.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public final class CheckedStateDelta {
+    private final int[] mAddedPositions;
+    private final int[] mRemovedPositions;
+
+    CheckedStateDelta(int[] addedPositions, int[] removedPositions) {
+        mAddedPositions = addedPositions;
+        mRemovedPositions = removedPositions;
+    }
+
+    /**
+     * @return ascending positions that have been newly checked. Do not modify the returned array.
+     */
+    public int[] getAddedPositions() {
+        return mAddedPositions;
+    }
+
+    /**
+     * @return ascending positions that have been newly unchecked. Do not modify the returned array.
+     */
+    public int[] getRemovedPositions() {
+        return mRemovedPositions;
+    }
+
+    public boolean isEmpty() {
+        return mAddedPositions.length == 0 && mRemovedPositions.length == 0;
+    }
+}
@@ -0,0 +1,177 @@
+package jp.co.nohana.core.widget;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live index of checked children of a group.
+ * The checked state is kept as a bitset of child positions, and each child is mapped to its position,
+ * so checked state queries and child toggles do not need to walk every child.
+ * Adding or removing a child only updates the positions of the children after it, so appending is constant time.
+ * The owner group updates this index from its hierarchy change and child state callbacks.
+ * Checked state changes are recorded as a pending delta between {@link #beginBatch()} and {@link #endBatch()},
+ * so that the group can notify the changes made in a batch at once.
+ * @param <V> child type.
+ * @author nohana Team
+ */
+final class CheckedStateIndex<V> {
+    private final BitSet mChecked = new BitSet();
+    private final List<V> mChildren = new ArrayList<V>();
+    private final Map<V, Integer> mPositions = new IdentityHashMap<V, Integer>();
+    private final BitSet mAdded = new BitSet();
+    private final BitSet mRemoved = new BitSet();
+    private int mCheckedCount;
+    private int mBatchDepth;
+
+    public void onChildAdded(V child, int position, boolean checked) {
+        mChildren.add(position, child);
+        mPositions.put(child, position);
+        // appending, as on inflation, shifts nothing
+        updatePositionsFrom(position + 1);
+        insertAt(mChecked, position);
+        insertAt(mAdded, position);
+        insertAt(mRemoved, position);
+        if (checked) {
+            mChecked.set(position);
+            mCheckedCount++;
+        }
+    }
+
+    public void onChildRemoved(V child) {
+        Integer removed = mPositions.remove(child);
+        if (removed == null) {
+            return;
+        }
+        int position = removed;
+        mChildren.remove(position);
+        updatePositionsFrom(position);
+        if (mChecked.get(position)) {
+            mCheckedCount--;
+        }
+        removeAt(mChecked, position);
+        removeAt(mAdded, position);
+        removeAt(mRemoved, position);
+    }
+
+    /**
+     * @return the position of the child if its checked state has been changed, -1 otherwise.
+     */
+    public int onChildCheckedChanged(V child, boolean checked) {
+        Integer position = mPositions.get(child);
+        if (position == null || mChecked.get(position) == checked) {
+            return -1;
+        }
+        mChecked.set(position, checked);
+        mCheckedCount += checked ? 1 : -1;
+        BitSet pending = checked ? mAdded : mRemoved;
+        BitSet reverted = checked ? mRemoved : mAdded;
+        if (reverted.get(position)) {
+            reverted.clear(position);
+        } else {
+            pending.set(position);
+        }
+        return position;
+    }
+
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * @return true if the outermost batch has been ended and there are pending changes to be notified.
+     * @throws java.lang.IllegalStateException if no batch is in progress.
+     */
+    public boolean endBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("no batch is in progress");
+        }
+        mBatchDepth--;
+        return mBatchDepth == 0 && (!mAdded.isEmpty() || !mRemoved.isEmpty());
+    }
+
+    public boolean isInBatch() {
+        return mBatchDepth > 0;
+    }
+
+    /**
+     * Takes the pending delta and clears it.
+     */
+    public CheckedStateDelta takeDelta() {
+        CheckedStateDelta delta = new CheckedStateDelta(toArray(mAdded), toArray(mRemoved));
+        mAdded.clear();
+        mRemoved.clear();
+        return delta;
+    }
+
+    public int getPosition(V child) {
+        Integer position = mPositions.get(child);
+        return position == null ? -1 : position;
+    }
+
+    public int getCheckedCount() {
+        return mCheckedCount;
+    }
+
+    public boolean isChecked(int position) {
+        return position >= 0 && mChecked.get(position);
+    }
+
+    /**
+     * @return the first checked position that is equal to or after the given position, or -1 if nothing is checked there.
+     */
+    public int nextCheckedPosition(int from) {
+        return mChecked.nextSetBit(from);
+    }
+
+    public int[] getCheckedPositions() {
+        return toArray(mChecked);
+    }
+
+    private void updatePositionsFrom(int from) {
+        for (int i = from; i < mChildren.size(); i++) {
+            mPositions.put(mChildren.get(i), i);
+        }
+    }
+
+    private static int[] toArray(BitSet bits) {
+        int[] positions = new int[bits.cardinality()];
+        int index = 0;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            positions[index++] = i;
+        }
+        return positions;
+    }
+
+    /**
+     * Shifts bits at and after the position by one to make room for the newly inserted position.
+     */
+    static void insertAt(BitSet bits, int position) {
+        int length = bits.length();
+        if (position >= length) {
+            return;
+        }
+        BitSet tail = bits.get(position, length);
+        bits.clear(position, length);
+        for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+            bits.set(position + i + 1);
+        }
+    }
+
+    /**
+     * Drops the bit at the position and shifts the following bits by one.
+     */
+    static void removeAt(BitSet bits, int position) {
+        int length = bits.length();
+        if (position >= length) {
+            return;
+        }
+        BitSet tail = bits.get(position + 1, Math.max(position + 1, length));
+        bits.clear(position, length);
+        for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+            bits.set(position + i);
+        }
+    }
+}
@@ -7,11 +7,11 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 
 @SuppressWarnings("unused") // public APIs
-public class CompoundImageView extends ImageView implements Checkable {
-    private static final int ADDITIONAL_STATE_COUNT = 1;
-    private static final int[] CHECKED_STATE_SET = { android.R.attr.state_checked };
+public class CompoundImageView extends ImageView implements Checkable, WizardStep {
     private boolean mChecked;
+    private int mStepState = STEP_STATE_NONE;
     private OnCheckedChangeListener mCheckedChangeListener;
+    private SelectionBinding mSelectionBinding;
 
     public CompoundImageView(Context context) {
         this(context, null);
@@ -46,6 +46,11 @@ public class CompoundImageView extends ImageView implements Checkable {
     public void setChecked(boolean checked) {
         if (mChecked != checked) {
             mChecked = checked;
+            if (mSelectionBinding != null && !mSelectionBinding.onCheckedChanged(checked)) {
+                // rejected by the selection model
+                mChecked = !checked;
+                return;
+            }
             refreshDrawableState();
             if (mCheckedChangeListener != null) {
                 mCheckedChangeListener.onCheckedChanged(this, mChecked);
@@ -60,17 +65,69 @@ public class CompoundImageView extends ImageView implements Checkable {
 
     @Override
     public int[] onCreateDrawableState(int extraSpace) {
-        int[] state = super.onCreateDrawableState(extraSpace + ADDITIONAL_STATE_COUNT);
-        if (isChecked()) {
-            mergeDrawableStates(state, CHECKED_STATE_SET);
+        if (extraSpace == 0) {
+            // no room is needed by the subclasses, so the shared merged state can be used
+            return DrawableStates.merge(super.onCreateDrawableState(0), isChecked(), mStepState);
         }
+        int[] extra = DrawableStates.getStateSet(isChecked(), mStepState);
+        int[] state = super.onCreateDrawableState(extraSpace + extra.length);
+        mergeDrawableStates(state, extra);
         return state;
     }
 
+    @Override
+    public int getStepState() {
+        return mStepState;
+    }
+
+    @Override
+    public void setStepState(int stepState) {
+        DrawableStates.checkStepState(stepState);
+        if (mStepState != stepState) {
+            mStepState = stepState;
+            refreshDrawableState();
+        }
+    }
+
     public void setOnCheckedChangeListener(OnCheckedChangeListener listener) {
         mCheckedChangeListener = listener;
     }
 
+    /**
+     * Binds this view to the item of the selection model, so that the checked state is read from and written to the model.
+     * Call this every time the view is recycled for another item.
+     * @param model the selection model.
+     * @param id the stable id of the item.
+     */
+    public void bindSelection(SelectionModel model, long id) {
+        if (mSelectionBinding == null) {
+            mSelectionBinding = new SelectionBinding(this);
+        }
+        mSelectionBinding.bind(model, id);
+    }
+
+    public void unbindSelection() {
+        if (mSelectionBinding != null) {
+            mSelectionBinding.unbind();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mSelectionBinding != null) {
+            mSelectionBinding.onAttachedToWindow();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mSelectionBinding != null) {
+            mSelectionBinding.onDetachedFromWindow();
+        }
+        super.onDetachedFromWindow();
+    }
+
     public static interface OnCheckedChangeListener {
         public void onCheckedChanged(CompoundImageView buttonView, boolean isChecked);
     }
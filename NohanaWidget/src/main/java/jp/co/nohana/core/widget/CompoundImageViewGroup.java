@@ -1,23 +1,20 @@
 package jp.co.nohana.core.widget;
 
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.util.AttributeSet;
-import android.view.View;
-import android.widget.LinearLayout;
-
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * This class is used to create a multiple-exclusion scope for a set of {@link CompoundImageView}s such as {@link android.widget.CheckBox}.
+ * The selection is managed by {@link CheckableGroupController}, so the choice mode can be single, multiple or limited multiple.
  * @author keishin.yokomaku
  *
  */
 @SuppressWarnings("unused") // public APIs
-public class CompoundImageViewGroup extends LinearLayout {
-    private CompoundImageView.OnCheckedChangeListener mChildObserver;
-    private PassThroughHierarchyChangeListener mHierarchyListener;
+public class CompoundImageViewGroup extends CheckableGroupLayout<CompoundImageView> {
+    private final CompoundImageView.OnCheckedChangeListener mChildObserver = new ChildStateObserver();
     private OnCheckedChangeListener mCheckListener;
+    private OnCheckedStateChangeListener mCheckedStateListener;
 
     public CompoundImageViewGroup(Context context) {
         this(context, null);
@@ -28,123 +25,57 @@ public class CompoundImageViewGroup extends LinearLayout {
     }
 
     public CompoundImageViewGroup(Context context, AttributeSet attrs, int defStyle) {
-        super(context, attrs);
-
-        mChildObserver = new ChildStateObserver();
-        mHierarchyListener = new PassThroughHierarchyChangeListener();
-        super.setOnHierarchyChangeListener(mHierarchyListener);
-    }
-
-    @Override
-    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
-        // the user listener is delegated to our pass-through listener
-        mHierarchyListener.mOnHierarchyChangeListener = listener;
-    }
-
-    public int getCheckedCount() {
-        int count = 0;
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof CompoundImageView)) {
-                continue;
-            }
-            CompoundImageView button = (CompoundImageView) view;
-            if (button.isChecked()) {
-                count++;
-            }
-        }
-        return count;
-    }
+        super(context, attrs, CompoundImageView.class);
 
-    public List<CompoundImageView> getCheckedViews() {
-        List<CompoundImageView> buttons = new ArrayList<CompoundImageView>();
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof CompoundImageView)) {
-                continue;
-            }
-            CompoundImageView button = (CompoundImageView) view;
-            buttons.add(button);
-        }
-        return buttons;
+        TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.CompoundImageViewGroup, defStyle, 0);
+        setChoiceLimit(array.getInt(R.styleable.CompoundImageViewGroup_choiceLimit, Integer.MAX_VALUE));
+        setChoiceMode(array.getInt(R.styleable.CompoundImageViewGroup_choiceMode, CheckableGroupController.CHOICE_MODE_MULTIPLE));
+        array.recycle();
     }
 
-    public List<Integer> getCheckedIndices() {
-        List<Integer> indices = new ArrayList<Integer>();
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof CompoundImageView)) {
-                continue;
-            }
-            CompoundImageView button = (CompoundImageView) view;
-            if (button.isChecked()) {
-                indices.add(i);
-            }
-        }
-        return indices;
+    public void setCheckedChangeListener(OnCheckedChangeListener listener) {
+        mCheckListener = listener;
     }
 
-    public void uncheckAll() {
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof CompoundImageView)) {
-                continue;
-            }
-            CompoundImageView button = (CompoundImageView) view;
-            button.setChecked(false);
-        }
+    public void setOnCheckedStateChangeListener(OnCheckedStateChangeListener listener) {
+        mCheckedStateListener = listener;
     }
 
-    public boolean isChecked(int index) {
-        View view = getChildAt(index);
-        if (!(view instanceof CompoundImageView)) {
-            return false;
-        }
-        CompoundImageView button = (CompoundImageView) view;
-        return button.isChecked();
+    @Override
+    protected void onCheckableChildAdded(CompoundImageView child) {
+        child.setOnCheckedChangeListener(mChildObserver);
     }
 
-    public void setCheckedChangeListener(OnCheckedChangeListener listener) {
-        mCheckListener = listener;
+    @Override
+    protected void onCheckableChildRemoved(CompoundImageView child) {
+        child.setOnCheckedChangeListener(null);
     }
 
-    private class PassThroughHierarchyChangeListener implements OnHierarchyChangeListener {
-        private OnHierarchyChangeListener mOnHierarchyChangeListener;
-
-        @Override
-        public void onChildViewAdded(View parent, View child) {
-            if (parent == CompoundImageViewGroup.this && child instanceof CompoundImageView) {
-                int id = child.getId();
-                if (id == View.NO_ID) {
-                    id = child.hashCode();
-                    child.setId(id);
-                }
-                ((CompoundImageView) child).setOnCheckedChangeListener(mChildObserver);
-            }
-
-            if (mOnHierarchyChangeListener != null) {
-                mOnHierarchyChangeListener.onChildViewAdded(parent, child);
-            }
+    @Override
+    protected void onCheckedStateChanged(CheckedStateDelta delta) {
+        if (mCheckedStateListener != null) {
+            mCheckedStateListener.onCheckedStateChanged(this, delta);
         }
-
-        @Override
-        public void onChildViewRemoved(View parent, View child) {
-            if (parent == CompoundImageViewGroup.this && child instanceof CompoundImageView) {
-                ((CompoundImageView) child).setOnCheckedChangeListener(null);
-            }
+        if (mCheckListener != null) {
+            mCheckListener.onCheckedChanged(this);
         }
     }
 
     private class ChildStateObserver implements CompoundImageView.OnCheckedChangeListener {
         @Override
         public void onCheckedChanged(CompoundImageView buttonView, boolean isChecked) {
-            if (mCheckListener != null) {
-                mCheckListener.onCheckedChanged(CompoundImageViewGroup.this);
-            }
+            onChildCheckedChanged(buttonView, isChecked);
         }
     }
 
     public static interface OnCheckedChangeListener {
         public void onCheckedChanged(CompoundImageViewGroup group);
     }
-}
\ No newline at end of file
+
+    /**
+     * Receives the positions changed by a single toggle or a batch, so that the listener does not need to scan the group.
+     */
+    public static interface OnCheckedStateChangeListener {
+        public void onCheckedStateChanged(CompoundImageViewGroup group, CheckedStateDelta delta);
+    }
+}
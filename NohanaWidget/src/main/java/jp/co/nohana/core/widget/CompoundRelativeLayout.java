@@ -5,10 +5,11 @@ import android.util.AttributeSet;
 import android.widget.Checkable;
 import android.widget.RelativeLayout;
 
-public class CompoundRelativeLayout extends RelativeLayout implements Checkable {
-    private static final int[] CHECKED_STATE_SET = { android.R.attr.state_checked };
+public class CompoundRelativeLayout extends RelativeLayout implements Checkable, WizardStep {
     private boolean mChecked;
+    private int mStepState = STEP_STATE_NONE;
     private OnCheckedChangeListener mCheckedChangeListener;
+    private SelectionBinding mSelectionBinding;
 
     @SuppressWarnings("unused") // public APIs.
     public CompoundRelativeLayout(Context context) {
@@ -39,6 +40,11 @@ public class CompoundRelativeLayout extends RelativeLayout implements Checkable
     public void setChecked(boolean checked) {
         if (mChecked != checked) {
             mChecked = checked;
+            if (mSelectionBinding != null && !mSelectionBinding.onCheckedChanged(checked)) {
+                // rejected by the selection model
+                mChecked = !checked;
+                return;
+            }
             refreshDrawableState();
             if (mCheckedChangeListener != null) {
                 mCheckedChangeListener.onCheckedChanged(this, mChecked);
@@ -53,17 +59,69 @@ public class CompoundRelativeLayout extends RelativeLayout implements Checkable
 
     @Override
     protected int[] onCreateDrawableState(int extraSpace) {
-        int[] state = super.onCreateDrawableState(extraSpace + 1);
-        if (isChecked()) {
-            mergeDrawableStates(state, CHECKED_STATE_SET);
+        if (extraSpace == 0) {
+            // no room is needed by the subclasses, so the shared merged state can be used
+            return DrawableStates.merge(super.onCreateDrawableState(0), isChecked(), mStepState);
         }
+        int[] extra = DrawableStates.getStateSet(isChecked(), mStepState);
+        int[] state = super.onCreateDrawableState(extraSpace + extra.length);
+        mergeDrawableStates(state, extra);
         return state;
     }
 
+    @Override
+    public int getStepState() {
+        return mStepState;
+    }
+
+    @Override
+    public void setStepState(int stepState) {
+        DrawableStates.checkStepState(stepState);
+        if (mStepState != stepState) {
+            mStepState = stepState;
+            refreshDrawableState();
+        }
+    }
+
     public void setOnCheckedChangeListener(OnCheckedChangeListener listener) {
         mCheckedChangeListener = listener;
     }
 
+    /**
+     * Binds this view to the item of the selection model, so that the checked state is read from and written to the model.
+     * Call this every time the view is recycled for another item.
+     * @param model the selection model.
+     * @param id the stable id of the item.
+     */
+    public void bindSelection(SelectionModel model, long id) {
+        if (mSelectionBinding == null) {
+            mSelectionBinding = new SelectionBinding(this);
+        }
+        mSelectionBinding.bind(model, id);
+    }
+
+    public void unbindSelection() {
+        if (mSelectionBinding != null) {
+            mSelectionBinding.unbind();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mSelectionBinding != null) {
+            mSelectionBinding.onAttachedToWindow();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mSelectionBinding != null) {
+            mSelectionBinding.onDetachedFromWindow();
+        }
+        super.onDetachedFromWindow();
+    }
+
     public static interface OnCheckedChangeListener {
         public void onCheckedChanged(CompoundRelativeLayout buttonView, boolean isChecked);
     }
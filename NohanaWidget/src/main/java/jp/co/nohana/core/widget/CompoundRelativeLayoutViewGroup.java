@@ -1,23 +1,20 @@
 package jp.co.nohana.core.widget;
 
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.util.AttributeSet;
-import android.view.View;
-import android.widget.LinearLayout;
-
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * This class is used to create a multiple-exclusion scope for a set of {@link jp.co.nohana.core.widget.CompoundRelativeLayout}s such as {@link android.widget.CheckBox}.
+ * The selection is managed by {@link CheckableGroupController}, so the choice mode can be single, multiple or limited multiple.
  * @author keishin.yokomaku
  *
  */
 @SuppressWarnings("unused") // public APIs
-public class CompoundRelativeLayoutViewGroup extends LinearLayout {
-    private CompoundRelativeLayout.OnCheckedChangeListener mChildObserver;
-    private PassThroughHierarchyChangeListener mHierarchyListener;
+public class CompoundRelativeLayoutViewGroup extends CheckableGroupLayout<CompoundRelativeLayout> {
+    private final CompoundRelativeLayout.OnCheckedChangeListener mChildObserver = new ChildStateObserver();
     private OnCheckedChangeListener mCheckListener;
+    private OnCheckedStateChangeListener mCheckedStateListener;
 
     public CompoundRelativeLayoutViewGroup(Context context) {
         this(context, null);
@@ -28,123 +25,57 @@ public class CompoundRelativeLayoutViewGroup extends LinearLayout {
     }
 
     public CompoundRelativeLayoutViewGroup(Context context, AttributeSet attrs, int defStyle) {
-        super(context, attrs);
-
-        mChildObserver = new ChildStateObserver();
-        mHierarchyListener = new PassThroughHierarchyChangeListener();
-        super.setOnHierarchyChangeListener(mHierarchyListener);
-    }
-
-    @Override
-    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
-        // the user listener is delegated to our pass-through listener
-        mHierarchyListener.mOnHierarchyChangeListener = listener;
-    }
-
-    public int getCheckedCount() {
-        int count = 0;
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof CompoundRelativeLayout)) {
-                continue;
-            }
-            CompoundRelativeLayout button = (CompoundRelativeLayout) view;
-            if (button.isChecked()) {
-                count++;
-            }
-        }
-        return count;
-    }
+        super(context, attrs, CompoundRelativeLayout.class);
 
-    public List<CompoundRelativeLayout> getCheckedViews() {
-        List<CompoundRelativeLayout> buttons = new ArrayList<CompoundRelativeLayout>();
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof CompoundRelativeLayout)) {
-                continue;
-            }
-            CompoundRelativeLayout button = (CompoundRelativeLayout) view;
-            buttons.add(button);
-        }
-        return buttons;
+        TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.CompoundRelativeLayoutViewGroup, defStyle, 0);
+        setChoiceLimit(array.getInt(R.styleable.CompoundRelativeLayoutViewGroup_choiceLimit, Integer.MAX_VALUE));
+        setChoiceMode(array.getInt(R.styleable.CompoundRelativeLayoutViewGroup_choiceMode, CheckableGroupController.CHOICE_MODE_MULTIPLE));
+        array.recycle();
     }
 
-    public List<Integer> getCheckedIndices() {
-        List<Integer> indices = new ArrayList<Integer>();
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof CompoundRelativeLayout)) {
-                continue;
-            }
-            CompoundRelativeLayout button = (CompoundRelativeLayout) view;
-            if (button.isChecked()) {
-                indices.add(i);
-            }
-        }
-        return indices;
+    public void setCheckedChangeListener(OnCheckedChangeListener listener) {
+        mCheckListener = listener;
     }
 
-    public void uncheckAll() {
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof CompoundRelativeLayout)) {
-                continue;
-            }
-            CompoundRelativeLayout button = (CompoundRelativeLayout) view;
-            button.setChecked(false);
-        }
+    public void setOnCheckedStateChangeListener(OnCheckedStateChangeListener listener) {
+        mCheckedStateListener = listener;
     }
 
-    public boolean isChecked(int index) {
-        View view = getChildAt(index);
-        if (!(view instanceof CompoundRelativeLayout)) {
-            return false;
-        }
-        CompoundRelativeLayout button = (CompoundRelativeLayout) view;
-        return button.isChecked();
+    @Override
+    protected void onCheckableChildAdded(CompoundRelativeLayout child) {
+        child.setOnCheckedChangeListener(mChildObserver);
     }
 
-    public void setCheckedChangeListener(OnCheckedChangeListener listener) {
-        mCheckListener = listener;
+    @Override
+    protected void onCheckableChildRemoved(CompoundRelativeLayout child) {
+        child.setOnCheckedChangeListener(null);
     }
 
-    private class PassThroughHierarchyChangeListener implements OnHierarchyChangeListener {
-        private OnHierarchyChangeListener mOnHierarchyChangeListener;
-
-        @Override
-        public void onChildViewAdded(View parent, View child) {
-            if (parent == CompoundRelativeLayoutViewGroup.this && child instanceof CompoundRelativeLayout) {
-                int id = child.getId();
-                if (id == View.NO_ID) {
-                    id = child.hashCode();
-                    child.setId(id);
-                }
-                ((CompoundRelativeLayout) child).setOnCheckedChangeListener(mChildObserver);
-            }
-
-            if (mOnHierarchyChangeListener != null) {
-                mOnHierarchyChangeListener.onChildViewAdded(parent, child);
-            }
+    @Override
+    protected void onCheckedStateChanged(CheckedStateDelta delta) {
+        if (mCheckedStateListener != null) {
+            mCheckedStateListener.onCheckedStateChanged(this, delta);
         }
-
-        @Override
-        public void onChildViewRemoved(View parent, View child) {
-            if (parent == CompoundRelativeLayoutViewGroup.this && child instanceof CompoundRelativeLayout) {
-                ((CompoundRelativeLayout) child).setOnCheckedChangeListener(null);
-            }
+        if (mCheckListener != null) {
+            mCheckListener.onCheckedChanged(this);
         }
     }
 
     private class ChildStateObserver implements CompoundRelativeLayout.OnCheckedChangeListener {
         @Override
         public void onCheckedChanged(CompoundRelativeLayout buttonView, boolean isChecked) {
-            if (mCheckListener != null) {
-                mCheckListener.onCheckedChanged(CompoundRelativeLayoutViewGroup.this);
-            }
+            onChildCheckedChanged(buttonView, isChecked);
         }
     }
 
     public static interface OnCheckedChangeListener {
         public void onCheckedChanged(CompoundRelativeLayoutViewGroup group);
     }
-}
\ No newline at end of file
+
+    /**
+     * Receives the positions changed by a single toggle or a batch, so that the listener does not need to scan the group.
+     */
+    public static interface OnCheckedStateChangeListener {
+        public void onCheckedStateChanged(CompoundRelativeLayoutViewGroup group, CheckedStateDelta delta);
+    }
+}
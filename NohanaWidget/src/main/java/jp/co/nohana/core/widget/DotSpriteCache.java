@@ -0,0 +1,54 @@
+package jp.co.nohana.core.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.util.LruCache;
+
+/**
+ * Process-wide cache of pre-rendered anti-aliased dot bitmaps, keyed by radius and color.
+ * Dot indicators blit these sprites instead of rasterizing circles on every draw.
+ * Sprites are shared across views, so callers must not modify or recycle them.
+ * This class is expected to be used on the UI thread.
+ * @author nohana Team
+ */
+final class DotSpriteCache {
+    private static final int MAX_SIZE_BYTES = 256 * 1024;
+    private static final LruCache<Long, Bitmap> CACHE = new LruCache<Long, Bitmap>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+    private static final Paint PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private DotSpriteCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @return the sprite of the dot, whose size is twice the radius, or null if the radius is not positive.
+     */
+    public static Bitmap get(int radius, int color) {
+        if (radius <= 0) {
+            return null;
+        }
+        Long key = ((long) radius << 32) | (color & 0xFFFFFFFFL);
+        Bitmap sprite = CACHE.get(key);
+        if (sprite == null) {
+            sprite = render(radius, color);
+            CACHE.put(key, sprite);
+        }
+        return sprite;
+    }
+
+    private static Bitmap render(int radius, int color) {
+        int diameter = 2 * radius;
+        Bitmap sprite = Bitmap.createBitmap(diameter, diameter, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(sprite);
+        PAINT.setStyle(Paint.Style.FILL);
+        PAINT.setColor(color);
+        canvas.drawCircle(radius, radius, radius, PAINT);
+        return sprite;
+    }
+}
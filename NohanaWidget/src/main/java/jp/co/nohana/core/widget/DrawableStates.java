@@ -0,0 +1,75 @@
+package jp.co.nohana.core.widget;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed drawable state sets of the checked and the wizard step states, and the merged state arrays reused across refreshes.
+ * Base state arrays given by {@link android.view.View#onCreateDrawableState(int)} with no extra space are shared by the framework,
+ * so the merged arrays are cached by the identity of the base array, up to a bound.
+ * This class is expected to be used on the UI thread.
+ * @author nohana Team
+ */
+final class DrawableStates {
+    private static final int MAX_CACHED_BASES = 128;
+    /** indexed by the step state, then by the checked state */
+    private static final int[][][] STATE_SETS = {
+            { {}, { android.R.attr.state_checked } },
+            { { R.attr.state_step_done }, { android.R.attr.state_checked, R.attr.state_step_done } },
+            { { R.attr.state_step_current }, { android.R.attr.state_checked, R.attr.state_step_current } },
+            { { R.attr.state_step_upcoming }, { android.R.attr.state_checked, R.attr.state_step_upcoming } },
+    };
+    private static final Map<int[], int[][][]> MERGED = new IdentityHashMap<int[], int[][][]>();
+
+    private DrawableStates() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param stepState the step state given to {@link WizardStep#setStepState(int)}.
+     * @throws java.lang.IllegalArgumentException if the step state is not one of the step state constants.
+     */
+    public static void checkStepState(int stepState) {
+        if (stepState < 0 || stepState >= STATE_SETS.length) {
+            throw new IllegalArgumentException("unknown step state: " + stepState);
+        }
+    }
+
+    /**
+     * @param checked the checked state.
+     * @param stepState one of the step state constants of {@link WizardStep}.
+     * @return the shared state set, which must not be modified.
+     */
+    public static int[] getStateSet(boolean checked, int stepState) {
+        return STATE_SETS[stepState][checked ? 1 : 0];
+    }
+
+    /**
+     * Creates the drawable state of the view with the checked and the step states.
+     * @param baseState the state returned by the super implementation of {@link android.view.View#onCreateDrawableState(int)} with no extra space.
+     * @return the merged state, which must not be modified.
+     */
+    public static int[] merge(int[] baseState, boolean checked, int stepState) {
+        int[] extra = getStateSet(checked, stepState);
+        if (extra.length == 0) {
+            return baseState;
+        }
+        int[][][] merged = MERGED.get(baseState);
+        if (merged == null) {
+            if (MERGED.size() >= MAX_CACHED_BASES) {
+                // base states of the views duplicating their parent state may be allocated every time
+                MERGED.clear();
+            }
+            merged = new int[STATE_SETS.length][2][];
+            MERGED.put(baseState, merged);
+        }
+        int[] state = merged[stepState][checked ? 1 : 0];
+        if (state == null) {
+            state = new int[baseState.length + extra.length];
+            System.arraycopy(baseState, 0, state, 0, baseState.length);
+            System.arraycopy(extra, 0, state, baseState.length, extra.length);
+            merged[stepState][checked ? 1 : 0] = state;
+        }
+        return state;
+    }
+}
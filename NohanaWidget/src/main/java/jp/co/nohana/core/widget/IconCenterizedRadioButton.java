@@ -3,15 +3,31 @@ package jp.co.nohana.core.widget;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.text.TextUtils;
 import android.util.AttributeSet;
-import android.view.Gravity;
-import android.widget.TextView;
-
-import com.amalgam.view.ViewUtils;
+import android.view.accessibility.AccessibilityEvent;
 
+/**
+ * This is a radio button that draws its icon centered above its text.
+ * The icon and the text are drawn directly by this view without any child view.
+ * The text layout is shared with the other buttons showing the same label through {@link TextLayoutCache}, and kept until the text or the width changes.
+ * This is still a {@link CompoundRelativeLayout} to be contained in {@link CompoundRelativeLayoutViewGroup}, but child views are not laid out.
+ */
 @SuppressWarnings("unused") // public APIs
 public class IconCenterizedRadioButton extends CompoundRelativeLayout {
     private static final int DEFAULT_TEXT_SIZE = 15;
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private CharSequence mText;
+    private ColorStateList mTextColor;
+    private Drawable mIconDrawable;
+    private int mIconDrawablePadding;
+    private Layout mTextLayout;
+    private int mTextLayoutWidth;
 
     public IconCenterizedRadioButton(Context context) {
         this(context, null);
@@ -26,22 +42,19 @@ public class IconCenterizedRadioButton extends CompoundRelativeLayout {
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.IconCenterizedRadioButton, defStyle, 0);
 
         setClickable(true);
+        // view groups do not draw by default
+        setWillNotDraw(false);
 
-        TextView textView = new TextView(context);
-        LayoutParams params = new LayoutParams(LayoutParams.WRAP_CONTENT , LayoutParams.WRAP_CONTENT);
-        params.addRule(CENTER_IN_PARENT, TRUE);
-        textView.setGravity(Gravity.CENTER);
-        textView.setDuplicateParentStateEnabled(true);
-        textView.setText(a.getText(R.styleable.IconCenterizedRadioButton_text));
-        textView.setTextSize(ViewUtils.pixelToSip(context, a.getDimensionPixelSize(R.styleable.IconCenterizedRadioButton_textSize, DEFAULT_TEXT_SIZE)));
+        mText = a.getText(R.styleable.IconCenterizedRadioButton_text);
+        mTextPaint.density = getResources().getDisplayMetrics().density;
+        mTextPaint.setTextSize(a.getDimensionPixelSize(R.styleable.IconCenterizedRadioButton_textSize, DEFAULT_TEXT_SIZE));
         ColorStateList textColor = a.getColorStateList(R.styleable.IconCenterizedRadioButton_textColor);
-        textView.setTextColor(textColor == null ?  ColorStateList.valueOf(0xFF000000) : textColor);
-        textView.setCompoundDrawablesWithIntrinsicBounds(null, a.getDrawable(R.styleable.IconCenterizedRadioButton_iconDrawable), null, null);
-        textView.setCompoundDrawablePadding((int) a.getDimension(R.styleable.IconCenterizedRadioButton_iconDrawablePadding, 0));
-        textView.setLayoutParams(params);
-        addView(textView);
+        mTextColor = textColor == null ? ColorStateList.valueOf(0xFF000000) : textColor;
+        setIconDrawableInternal(a.getDrawable(R.styleable.IconCenterizedRadioButton_iconDrawable));
+        mIconDrawablePadding = (int) a.getDimension(R.styleable.IconCenterizedRadioButton_iconDrawablePadding, 0);
 
         a.recycle();
+        updateTextColor();
     }
 
     @Override
@@ -52,4 +65,209 @@ public class IconCenterizedRadioButton extends CompoundRelativeLayout {
             super.toggle();
         }
     }
-}
\ No newline at end of file
+
+    public CharSequence getText() {
+        return mText;
+    }
+
+    public void setText(CharSequence text) {
+        if (TextUtils.equals(text, mText)) {
+            return;
+        }
+        mText = text;
+        mTextLayout = null;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * @return the text size in pixels.
+     */
+    public float getTextSize() {
+        return mTextPaint.getTextSize();
+    }
+
+    /**
+     * @param textSize the text size in pixels.
+     */
+    public void setTextSize(float textSize) {
+        if (textSize == mTextPaint.getTextSize()) {
+            return;
+        }
+        mTextPaint.setTextSize(textSize);
+        mTextLayout = null;
+        requestLayout();
+        invalidate();
+    }
+
+    public ColorStateList getTextColor() {
+        return mTextColor;
+    }
+
+    public void setTextColor(ColorStateList textColor) {
+        if (textColor == null) {
+            throw new NullPointerException("text color must not be null");
+        }
+        mTextColor = textColor;
+        updateTextColor();
+    }
+
+    public Drawable getIconDrawable() {
+        return mIconDrawable;
+    }
+
+    public void setIconDrawable(Drawable drawable) {
+        if (drawable == mIconDrawable) {
+            return;
+        }
+        setIconDrawableInternal(drawable);
+        requestLayout();
+        invalidate();
+    }
+
+    public int getIconDrawablePadding() {
+        return mIconDrawablePadding;
+    }
+
+    public void setIconDrawablePadding(int padding) {
+        if (padding == mIconDrawablePadding) {
+            return;
+        }
+        mIconDrawablePadding = padding;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int iconWidth = mIconDrawable != null ? mIconDrawable.getIntrinsicWidth() : 0;
+        int textWidth = TextUtils.isEmpty(mText) ? 0 : TextLayoutCache.getDesiredWidth(mText, mTextPaint);
+        int width = resolveSize(Math.max(iconWidth, textWidth) + horizontalPadding, widthMeasureSpec);
+        // the text wraps if the width is not enough
+        Layout textLayout = getTextLayout(Math.min(textWidth, Math.max(0, width - horizontalPadding)));
+        int height = getContentHeight(textLayout) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(Math.max(width, getSuggestedMinimumWidth()),
+                Math.max(resolveSize(height, heightMeasureSpec), getSuggestedMinimumHeight()));
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_MEASURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        // nothing to lay out, the icon and the text are placed on drawing
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        super.onDraw(canvas);
+
+        Layout textLayout = mTextLayout;
+        int contentLeft = getPaddingLeft();
+        int contentWidth = getWidth() - contentLeft - getPaddingRight();
+        int contentTop = getPaddingTop();
+        int contentHeight = getHeight() - contentTop - getPaddingBottom();
+        int top = contentTop + (contentHeight - getContentHeight(textLayout)) / 2;
+        if (mIconDrawable != null) {
+            int iconWidth = mIconDrawable.getIntrinsicWidth();
+            int iconHeight = mIconDrawable.getIntrinsicHeight();
+            int iconLeft = contentLeft + (contentWidth - iconWidth) / 2;
+            mIconDrawable.setBounds(iconLeft, top, iconLeft + iconWidth, top + iconHeight);
+            mIconDrawable.draw(canvas);
+            top += iconHeight + (textLayout != null ? mIconDrawablePadding : 0);
+        }
+        if (textLayout != null) {
+            int saveCount = canvas.save();
+            canvas.translate(contentLeft + (contentWidth - textLayout.getWidth()) / 2, top);
+            // the paint of the layout is shared with the other buttons
+            textLayout.getPaint().setColor(mTextPaint.getColor());
+            textLayout.draw(canvas);
+            canvas.restoreToCount(saveCount);
+        }
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_DRAW, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        if (mIconDrawable != null && mIconDrawable.isStateful()) {
+            mIconDrawable.setState(getDrawableState());
+        }
+        updateTextColor();
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == mIconDrawable || super.verifyDrawable(who);
+    }
+
+    @Override
+    public boolean dispatchPopulateAccessibilityEvent(AccessibilityEvent event) {
+        boolean populated = super.dispatchPopulateAccessibilityEvent(event);
+        if (!TextUtils.isEmpty(mText)) {
+            event.getText().add(mText);
+        }
+        return populated;
+    }
+
+    private void setIconDrawableInternal(Drawable drawable) {
+        if (mIconDrawable != null) {
+            mIconDrawable.setCallback(null);
+        }
+        mIconDrawable = drawable;
+        if (drawable != null) {
+            drawable.setCallback(this);
+            if (drawable.isStateful()) {
+                drawable.setState(getDrawableState());
+            }
+        }
+    }
+
+    private void updateTextColor() {
+        if (mTextColor == null) {
+            // called by the super constructor
+            return;
+        }
+        int color = mTextColor.getColorForState(getDrawableState(), mTextColor.getDefaultColor());
+        if (color != mTextPaint.getColor()) {
+            mTextPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    /**
+     * @return the text layout wrapped at the width, reusing the last one if the width is the same, or null if there is no text.
+     */
+    private Layout getTextLayout(int width) {
+        if (TextUtils.isEmpty(mText)) {
+            mTextLayout = null;
+            return null;
+        }
+        if (mTextLayout == null || mTextLayoutWidth != width) {
+            mTextLayout = TextLayoutCache.getLayout(mText, mTextPaint, width);
+            mTextLayoutWidth = width;
+        }
+        return mTextLayout;
+    }
+
+    private int getContentHeight(Layout textLayout) {
+        int height = 0;
+        if (mIconDrawable != null) {
+            height += mIconDrawable.getIntrinsicHeight();
+        }
+        if (textLayout != null) {
+            height += textLayout.getHeight();
+            if (mIconDrawable != null) {
+                height += mIconDrawablePadding;
+            }
+        }
+        return height;
+    }
+}
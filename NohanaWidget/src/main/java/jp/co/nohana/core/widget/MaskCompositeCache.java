@@ -0,0 +1,248 @@
+package jp.co.nohana.core.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide LRU cache of masked images, keyed by the image, the mask and the composited geometry.
+ * The source bitmaps are only weakly referred by the keys, so the cache holds nothing but the composites.
+ * Images are resampled once into the drawn bounds of the view, so cached bitmaps are as large as what is on screen.
+ * The same image masked in several views is composited only once.
+ *
+ * Composites are borrowed from {@link BitmapPool}. Views retain the composite they got from {@link #peek(Key)} or {@link #get(Key)},
+ * and {@link #release(android.graphics.Bitmap)} it when they are detached or the composite is replaced.
+ * A composite goes back to the pool once it has been evicted and is no longer retained by any view.
+ * Cached bitmaps are shared, so callers must not modify or recycle them.
+ * @author nohana Team
+ */
+final class MaskCompositeCache {
+    private static final int MAX_SIZE_BYTES = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 8 * 1024 * 1024);
+    private static final Object LOCK = new Object();
+    private static final PorterDuffXfermode MASK_XFERMODE = new PorterDuffXfermode(PorterDuff.Mode.DST_IN);
+    /** retain counts of the cached or retained composites */
+    private static final Map<Bitmap, Usage> USAGES = new IdentityHashMap<Bitmap, Usage>();
+    private static final LruCache<Key, Bitmap> CACHE = new LruCache<Key, Bitmap>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Key key, Bitmap oldValue, Bitmap newValue) {
+            synchronized (LOCK) {
+                Usage usage = USAGES.get(oldValue);
+                if (usage == null) {
+                    return;
+                }
+                usage.mCached = false;
+                recycleIfUnused(oldValue, usage);
+            }
+        }
+    };
+
+    private MaskCompositeCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @return the retained composite, or null if it has not been composited yet.
+     */
+    public static Bitmap peek(Key key) {
+        synchronized (LOCK) {
+            Bitmap composite = CACHE.get(key);
+            if (composite != null) {
+                USAGES.get(composite).mRetainCount++;
+            }
+            return composite;
+        }
+    }
+
+    /**
+     * Returns the retained composite of the image masked by the alpha channel of the mask, composited into a bitmap of the key size.
+     * This may be called on a worker thread as long as the source bitmaps are not modified meanwhile.
+     * @return the retained composite, or null if the source bitmaps are no longer referred by the caller.
+     */
+    public static Bitmap get(Key key) {
+        Bitmap composite = peek(key);
+        if (composite != null) {
+            return composite;
+        }
+        Bitmap image = key.mImage.get();
+        Bitmap mask = key.mMask.get();
+        if (image == null || mask == null) {
+            return null;
+        }
+        composite = BitmapPool.getInstance().acquire(key.mWidth, key.mHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(composite);
+        Matrix matrix = new Matrix();
+        matrix.setValues(key.mMatrixValues);
+        canvas.concat(matrix);
+        canvas.drawBitmap(image, null, key.mBounds, new Paint(Paint.FILTER_BITMAP_FLAG));
+        applyMask(canvas, mask, new Rect(0, 0, key.mWidth, key.mHeight), newMaskPaint());
+        synchronized (LOCK) {
+            Usage usage = new Usage();
+            usage.mCached = true;
+            usage.mRetainCount = 1;
+            USAGES.put(composite, usage);
+        }
+        // may evict another composite, or the same composite made concurrently by another thread
+        CACHE.put(key, composite);
+        return composite;
+    }
+
+    /**
+     * Releases the composite retained by {@link #peek(Key)} or {@link #get(Key)}.
+     */
+    public static void release(Bitmap composite) {
+        synchronized (LOCK) {
+            Usage usage = USAGES.get(composite);
+            if (usage == null) {
+                return;
+            }
+            usage.mRetainCount--;
+            recycleIfUnused(composite, usage);
+        }
+    }
+
+    /**
+     * @return the generation id of the bitmap that changes whenever its pixels are modified, or 0 if the platform does not tell it.
+     */
+    static int getGenerationId(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+            return bitmap.getGenerationId();
+        }
+        return 0;
+    }
+
+    private static void recycleIfUnused(Bitmap composite, Usage usage) {
+        if (!usage.mCached && usage.mRetainCount <= 0) {
+            USAGES.remove(composite);
+            BitmapPool.getInstance().release(composite);
+        }
+    }
+
+    private static void applyMask(Canvas canvas, Bitmap mask, Rect bounds, Paint maskPaint) {
+        canvas.drawBitmap(mask, null, bounds, maskPaint);
+    }
+
+    private static Paint newMaskPaint() {
+        Paint maskPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        maskPaint.setXfermode(MASK_XFERMODE);
+        return maskPaint;
+    }
+
+    /**
+     * Composites any kind of drawable without caching, since the drawable state may change at any time.
+     * The canvas and the paint are kept to be reused, so a view compositing an animated drawable does not allocate per frame.
+     * This must be used on the UI thread.
+     */
+    public static final class Compositor {
+        private final Canvas mCanvas = new Canvas();
+        private final Paint mMaskPaint = newMaskPaint();
+        private final Rect mMaskBounds = new Rect();
+
+        /**
+         * Composites the drawable masked by the alpha channel of the mask into the target, replacing its pixels.
+         */
+        public void composite(Drawable drawable, Matrix matrix, Bitmap mask, Bitmap target) {
+            target.eraseColor(Color.TRANSPARENT);
+            mCanvas.setBitmap(target);
+            int saveCount = mCanvas.save();
+            mCanvas.concat(matrix);
+            drawable.draw(mCanvas);
+            mCanvas.restoreToCount(saveCount);
+            mMaskBounds.set(0, 0, target.getWidth(), target.getHeight());
+            applyMask(mCanvas, mask, mMaskBounds, mMaskPaint);
+        }
+    }
+
+    private static final class Usage {
+        private int mRetainCount;
+        private boolean mCached;
+    }
+
+    /**
+     * Identifies a composite by the identities and the generations of the source bitmaps, the image placement and the size.
+     * Keys of collected source bitmaps equal no other key, and age out of the cache.
+     */
+    public static final class Key {
+        private final WeakReference<Bitmap> mImage;
+        private final WeakReference<Bitmap> mMask;
+        private final int mImageHash;
+        private final int mMaskHash;
+        private final int mImageGenerationId;
+        private final int mMaskGenerationId;
+        private final Rect mBounds;
+        private final float[] mMatrixValues = new float[9];
+        private final int mWidth;
+        private final int mHeight;
+
+        /**
+         * @param image the image bitmap.
+         * @param bounds the bounds of the image drawable.
+         * @param matrix the image matrix applied to the drawable bounds.
+         * @param mask the mask bitmap, stretched to the composited size.
+         * @param width the composited width.
+         * @param height the composited height.
+         */
+        public Key(Bitmap image, Rect bounds, Matrix matrix, Bitmap mask, int width, int height) {
+            mImage = new WeakReference<Bitmap>(image);
+            mImageHash = System.identityHashCode(image);
+            mImageGenerationId = getGenerationId(image);
+            mBounds = new Rect(bounds);
+            matrix.getValues(mMatrixValues);
+            mMask = new WeakReference<Bitmap>(mask);
+            mMaskHash = System.identityHashCode(mask);
+            mMaskGenerationId = getGenerationId(mask);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            if (mImageHash != key.mImageHash || mMaskHash != key.mMaskHash
+                    || mImageGenerationId != key.mImageGenerationId || mMaskGenerationId != key.mMaskGenerationId
+                    || mWidth != key.mWidth || mHeight != key.mHeight
+                    || !mBounds.equals(key.mBounds) || !Arrays.equals(mMatrixValues, key.mMatrixValues)) {
+                return false;
+            }
+            Bitmap image = mImage.get();
+            Bitmap mask = mMask.get();
+            return image != null && mask != null && image == key.mImage.get() && mask == key.mMask.get();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mImageHash;
+            result = 31 * result + mMaskHash;
+            result = 31 * result + mImageGenerationId;
+            result = 31 * result + mMaskGenerationId;
+            result = 31 * result + mBounds.hashCode();
+            result = 31 * result + Arrays.hashCode(mMatrixValues);
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            return result;
+        }
+    }
+}
@@ -1,19 +1,72 @@
 package jp.co.nohana.core.widget;
 
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.AttributeSet;
 import android.widget.ImageView;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This is an {@link android.widget.ImageView} that masks its image with the alpha channel of the mask overlay bitmap.
+ * The masked image is composited once when the image or the mask is changed, and shared through {@link MaskCompositeCache},
+ * so that drawing only blits the cached result.
+ * The image is resampled once into the drawn bounds through the image matrix, so the scale type is respected and any kind of drawable can be masked,
+ * and the mask is stretched to the same bounds.
+ *
+ * In the asynchronous mode, compositing runs on a worker thread and the placeholder drawable is drawn until the result is posted back.
+ * Pending work is cancelled when the image or the mask is replaced, or when the view is detached from the window.
+ *
+ * Composites are borrowed from {@link BitmapPool} and given back when they are replaced or the view is detached,
+ * so that views in a recycling list reuse the same bitmaps.
+ */
+@SuppressWarnings("unused") // public APIs
 public class MaskOverlayImageView extends ImageView {
+    private static final ExecutorService COMPOSITE_EXECUTOR = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "MaskOverlayImageView");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private final MaskCompositeCache.Compositor mCompositor = new MaskCompositeCache.Compositor();
+    /** carries the color filter and the image alpha to the composite, created lazily since they may be set by the super constructor */
+    private Paint mCompositePaint;
     private Bitmap mMaskOverlay;
-    private Paint mMaskPaint;
-    private Paint mImagePaint;
+    private Bitmap mComposite;
+    /** true if the composite is retained from {@link MaskCompositeCache}, false if it is owned by this view */
+    private boolean mCompositeShared;
+    private Drawable mCompositeDrawable;
+    private Bitmap mCompositeMask;
+    /** generation ids of the source bitmaps when composited, to composite again after their pixels are modified */
+    private int mCompositeImageGenerationId;
+    private int mCompositeMaskGenerationId;
+    private boolean mCompositeDirty;
+    private boolean mAsyncCompositing;
+    private Drawable mPlaceholder;
+    private Future<?> mPendingComposite;
+    private int mCompositeGeneration;
 
     public MaskOverlayImageView(Context context) {
         this(context, null);
@@ -25,32 +78,244 @@ public class MaskOverlayImageView extends ImageView {
 
     public MaskOverlayImageView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        mMaskPaint = new Paint();
-        mImagePaint = new Paint();
-        mMaskPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
-        mImagePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OVER));
+
+        TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.MaskOverlayImageView, defStyle, 0);
+        mAsyncCompositing = array.getBoolean(R.styleable.MaskOverlayImageView_asyncCompositing, false);
+        mPlaceholder = array.getDrawable(R.styleable.MaskOverlayImageView_maskPlaceholder);
+        array.recycle();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        drawMasked(canvas);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_DRAW, System.nanoTime() - start);
+        }
+    }
 
-        // we cannot do anything without bitmaps.
-        if (mMaskOverlay == null) {
+    private void drawMasked(Canvas canvas) {
+        Drawable drawable = getDrawable();
+        // we cannot do anything without the image and the mask.
+        if (mMaskOverlay == null || drawable == null) {
+            cancelPendingComposite();
+            releaseComposite();
+            super.onDraw(canvas);
             return;
         }
-        if (getDrawable() == null) {
+
+        Bitmap composite = getComposite(drawable);
+        if (composite == null) {
+            drawPlaceholder(canvas);
             return;
         }
+        // our own composites are drawn through the drawable, which already has the color filter and the alpha
+        canvas.drawBitmap(composite, getPaddingLeft(), getPaddingTop(), mCompositeShared ? mCompositePaint : null);
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        obtainCompositePaint().setColorFilter(cf);
+        super.setColorFilter(cf);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setAlpha(int alpha) {
+        // setImageAlpha also comes here
+        obtainCompositePaint().setAlpha(alpha);
+        super.setAlpha(alpha);
+    }
+
+    @Override
+    protected boolean setFrame(int l, int t, int r, int b) {
+        boolean changed = super.setFrame(l, t, r, b);
+        if (changed) {
+            // the drawn bounds and the image matrix may have been changed
+            mCompositeDirty = true;
+        }
+        return changed;
+    }
 
-        canvas.save();
-        canvas.drawBitmap(mMaskOverlay, 0, 0, mMaskPaint);
-        canvas.drawBitmap(((BitmapDrawable) getDrawable()).getBitmap(), 0, 0, mImagePaint);
-        canvas.restore();
+    @Override
+    public void setScaleType(ScaleType scaleType) {
+        super.setScaleType(scaleType);
+        mCompositeDirty = true;
+    }
+
+    @Override
+    public void setImageMatrix(Matrix matrix) {
+        super.setImageMatrix(matrix);
+        mCompositeDirty = true;
+    }
+
+    @Override
+    public void invalidateDrawable(Drawable dr) {
+        if (dr == getDrawable()) {
+            // the drawable state or level has been changed
+            mCompositeDirty = true;
+        }
+        super.invalidateDrawable(dr);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        cancelPendingComposite();
+        // composited again on the next draw after attached
+        releaseComposite();
+        super.onDetachedFromWindow();
     }
 
     public void setMaskOverlay(Bitmap bitmap) {
         mMaskOverlay = bitmap;
         invalidate();
     }
-}
\ No newline at end of file
+
+    public boolean isAsyncCompositing() {
+        return mAsyncCompositing;
+    }
+
+    /**
+     * @param asyncCompositing true to composite the masked image on a worker thread.
+     */
+    public void setAsyncCompositing(boolean asyncCompositing) {
+        mAsyncCompositing = asyncCompositing;
+        if (!asyncCompositing) {
+            cancelPendingComposite();
+            invalidate();
+        }
+    }
+
+    /**
+     * @param placeholder the drawable drawn while the masked image is being composited asynchronously.
+     */
+    public void setPlaceholder(Drawable placeholder) {
+        mPlaceholder = placeholder;
+        invalidate();
+    }
+
+    /**
+     * @return the composite of the image and the current mask resampled into the drawn bounds,
+     * or null if it is being composited asynchronously.
+     */
+    private Bitmap getComposite(Drawable drawable) {
+        Bitmap mask = mMaskOverlay;
+        Bitmap image = drawable instanceof BitmapDrawable ? ((BitmapDrawable) drawable).getBitmap() : null;
+        int imageGenerationId = image != null ? MaskCompositeCache.getGenerationId(image) : 0;
+        int maskGenerationId = MaskCompositeCache.getGenerationId(mask);
+        boolean upToDate = !mCompositeDirty && mCompositeDrawable == drawable && mCompositeMask == mask
+                && mCompositeImageGenerationId == imageGenerationId && mCompositeMaskGenerationId == maskGenerationId;
+        if (upToDate && (mComposite != null || mPendingComposite != null)) {
+            return mComposite;
+        }
+        cancelPendingComposite();
+        mCompositeDirty = false;
+        mCompositeDrawable = drawable;
+        mCompositeMask = mask;
+        mCompositeImageGenerationId = imageGenerationId;
+        mCompositeMaskGenerationId = maskGenerationId;
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (image == null && width > 0 && height > 0 && mComposite != null && !mCompositeShared
+                && mComposite.getWidth() == width && mComposite.getHeight() == height) {
+            // composite the changed drawable state into our own bitmap again
+            mCompositor.composite(drawable, getImageMatrix(), mask, mComposite);
+            return mComposite;
+        }
+        releaseComposite();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        Matrix matrix = getImageMatrix();
+        if (image == null) {
+            // other drawables are not safe to draw on a worker thread, and their state may change at any time
+            mComposite = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ARGB_8888);
+            mCompositeShared = false;
+            mCompositor.composite(drawable, matrix, mask, mComposite);
+            return mComposite;
+        }
+        MaskCompositeCache.Key key = new MaskCompositeCache.Key(image, drawable.getBounds(), matrix, mask, width, height);
+        mComposite = MaskCompositeCache.peek(key);
+        if (mComposite == null && !mAsyncCompositing) {
+            mComposite = MaskCompositeCache.get(key);
+        }
+        if (mComposite != null) {
+            mCompositeShared = true;
+            return mComposite;
+        }
+        mPendingComposite = COMPOSITE_EXECUTOR.submit(new CompositeTask(mCompositeGeneration, key));
+        return null;
+    }
+
+    private void cancelPendingComposite() {
+        if (mPendingComposite != null) {
+            mPendingComposite.cancel(true);
+            mPendingComposite = null;
+        }
+        // results of the cancelled work will be dropped
+        mCompositeGeneration++;
+    }
+
+    private void releaseComposite() {
+        if (mComposite == null) {
+            return;
+        }
+        if (mCompositeShared) {
+            MaskCompositeCache.release(mComposite);
+        } else {
+            BitmapPool.getInstance().release(mComposite);
+        }
+        mComposite = null;
+    }
+
+    private Paint obtainCompositePaint() {
+        if (mCompositePaint == null) {
+            mCompositePaint = new Paint();
+        }
+        return mCompositePaint;
+    }
+
+    private void drawPlaceholder(Canvas canvas) {
+        if (mPlaceholder == null) {
+            return;
+        }
+        mPlaceholder.setBounds(getPaddingLeft(), getPaddingTop(), getWidth() - getPaddingRight(), getHeight() - getPaddingBottom());
+        mPlaceholder.draw(canvas);
+    }
+
+    private void onCompositeFinished(int generation, Bitmap composite) {
+        if (generation != mCompositeGeneration) {
+            MaskCompositeCache.release(composite);
+            return;
+        }
+        mPendingComposite = null;
+        mComposite = composite;
+        mCompositeShared = true;
+        invalidate();
+    }
+
+    private class CompositeTask implements Runnable {
+        private final int mGeneration;
+        private final MaskCompositeCache.Key mKey;
+
+        public CompositeTask(int generation, MaskCompositeCache.Key key) {
+            mGeneration = generation;
+            mKey = key;
+        }
+
+        @Override
+        public void run() {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            final Bitmap composite = MaskCompositeCache.get(mKey);
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    onCompositeFinished(mGeneration, composite);
+                }
+            });
+        }
+    }
+}
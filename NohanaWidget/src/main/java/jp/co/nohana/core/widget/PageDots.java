@@ -2,9 +2,13 @@ package jp.co.nohana.core.widget;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Build;
+import android.support.v4.view.ViewPager;
 import android.util.AttributeSet;
 import android.view.View;
 
@@ -29,8 +33,24 @@ import com.amalgam.view.ViewUtils;
  *         nohana:interval="6dp"
  *         nohana:dot_color="#FFFFFFFF"
  *         nohana:selected_dot_color="#FF000000"
+ *         nohana:maxVisibleDots="7"
  *         />
  * </pre>
+ *
+ * maxVisibleDots を指定すると、選択中のドットを中心にした最大その数のドットだけを表示します。
+ * 表示範囲の外にもページがある場合は、端のドットを小さく描画します。
+ * 描画と計測のコストはページ数ではなく表示するドットの数に比例します。
+ *
+ * ドットは半径と色ごとに事前に描画したビットマップ（全インスタンスで共有）を転写して描画し、
+ * 選択位置の変更時は変化した2つのドットの範囲だけを再描画します。
+ *
+ * {@link #setViewPager(android.support.v4.view.ViewPager)} で ViewPager と連動させると、
+ * スクロール量に合わせて選択中の表示を補間します。補間の方法は selectionStyle で指定します
+ * （fade: 2つのドットの色をブレンド、pill: 選択中の表示が伸び縮みしながら移動）。
+ * スクロール中の描画はオブジェクトを生成せず、変化したドットの範囲だけを再描画します。
+ *
+ * プロパティの変更は、サイズが変わるもの（ドットの数、半径、間隔など）と描画だけが変わるもの（色など）に分類し、
+ * 同じフレーム内の複数の変更をまとめて1回の requestLayout() または invalidate() として反映します。
  * 
  * @author nohana Team
  * 
@@ -43,8 +63,16 @@ public class PageDots extends View {
     private static final int DEFAULT_INTERVAL_DIP = 6;
     private static final int DEFAULT_COLOR = Color.WHITE;
     private static final int DEFAULT_SELECTED_COLOR = Color.BLACK;
-    /** ペイント */
-    private final Paint mPaint;
+    private static final int DEFAULT_MAX_VISIBLE_DOTS = 0;
+    private static final float EDGE_DOT_SCALE = 0.5f;
+    /** 選択表示の補間方法: 色をブレンドする */
+    public static final int SELECTION_STYLE_FADE = 0;
+    /** 選択表示の補間方法: 伸び縮みしながら移動する */
+    public static final int SELECTION_STYLE_PILL = 1;
+    /** 次のフレームで再描画が必要 */
+    private static final int UPDATE_DRAW = 1;
+    /** 次のフレームで再レイアウトが必要 */
+    private static final int UPDATE_LAYOUT = 1 << 1;
     /** 選択中のドット位置 */
     private int mSelectedDot;
     /** ドットの数 */
@@ -57,6 +85,33 @@ public class PageDots extends View {
     private int mDotColor;
     /** ドットの選択色 */
     private int mSelectedDotColor;
+    /** 一度に表示するドットの最大数。0以下なら全て表示する */
+    private int mMaxVisibleDots;
+    /** 選択中のドットから次のドットへのスクロール量 (0以上1未満) */
+    private float mSelectionOffset;
+    /** 選択表示の補間方法 */
+    private int mSelectionStyle;
+    /** スクロール中の選択表示用のペイント */
+    private final Paint mIndicatorPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    /** スクロール中の選択表示の範囲 */
+    private final RectF mIndicatorRect = new RectF();
+    /** ViewPager のスクロールを受け取るリスナ */
+    private ViewPager.OnPageChangeListener mPageChangeListener;
+    /** 次のフレームで反映するプロパティの変更 */
+    private int mPendingUpdates;
+    /** プロパティの変更をまとめて反映する */
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingUpdates();
+        }
+    };
+    /** ドットのスプライト */
+    private Bitmap mDotSprite;
+    /** 選択中のドットのスプライト */
+    private Bitmap mSelectedDotSprite;
+    /** 表示範囲の端のドットのスプライト */
+    private Bitmap mEdgeDotSprite;
 
     public PageDots(Context context) {
         this(context, null);
@@ -70,35 +125,221 @@ public class PageDots extends View {
         super(context, attrs, defStyle);
 
         TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.PageDots);
-        mPaint = new Paint();
-        mPaint.setAntiAlias(true);
-        mPaint.setStyle(Paint.Style.FILL);
         mSelectedDot = array.getInt(R.styleable.PageDots_selectedDotIndex, DEFAULT_SELECTED_DOT_INDEX);
         mDotCount = array.getInt(R.styleable.PageDots_count, DEFAULT_COUNT);
         mDotRadius = array.getDimensionPixelSize(R.styleable.PageDots_dotRadius, ViewUtils.dipToPixel(getResources(), DEFAULT_RADIUS_DIP));
         mDotInterval = array.getDimensionPixelSize(R.styleable.PageDots_dotMargin, ViewUtils.dipToPixel(getResources(), DEFAULT_INTERVAL_DIP));
         mDotColor = array.getColor(R.styleable.PageDots_dotColor, DEFAULT_COLOR);
         mSelectedDotColor = array.getColor(R.styleable.PageDots_dotSelectedColor, DEFAULT_SELECTED_COLOR);
+        mMaxVisibleDots = array.getInt(R.styleable.PageDots_maxVisibleDots, DEFAULT_MAX_VISIBLE_DOTS);
+        mSelectionStyle = array.getInt(R.styleable.PageDots_selectionStyle, SELECTION_STYLE_FADE);
         array.recycle();
+        updateSprites();
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        int diameter = 2 * mDotRadius;
-        setMeasuredDimension(diameter * mDotCount + mDotInterval * (mDotCount - 1), diameter);
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        int width = getDotsWidth(getVisibleDotCount()) + getPaddingLeft() + getPaddingRight();
+        int height = 2 * mDotRadius + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_MEASURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // デタッチ中に保留された更新を反映する。同じ MeasureSpec で再アタッチされても再計測されるように、レイアウト要求も落とさない
+        if (mPendingUpdates != 0) {
+            applyPendingUpdates();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // 保留中の更新は次のアタッチ時に反映する
+        removeCallbacks(mUpdateRunnable);
+        super.onDetachedFromWindow();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
         super.onDraw(canvas);
 
         int diameter = 2 * mDotRadius;
+        int visibleCount = getVisibleDotCount();
+        int first = getFirstVisibleDot();
         int x = mDotRadius;
-        for (int i = 0; i < mDotCount; i++) {
-            mPaint.setColor(mSelectedDot == i ? mSelectedDotColor : mDotColor);
-            canvas.drawCircle(x, mDotRadius, mDotRadius, mPaint);
+        int saveCount = canvas.save();
+        canvas.translate(getContentLeft(), getContentTop());
+        boolean scrolling = mSelectionOffset > 0;
+        for (int i = first; i < first + visibleCount; i++) {
+            Bitmap sprite = getSprite(i, first, visibleCount);
+            if (scrolling && (i == mSelectedDot || i == mSelectedDot + 1)) {
+                if (mSelectionStyle == SELECTION_STYLE_FADE) {
+                    float fraction = i == mSelectedDot ? mSelectionOffset : 1 - mSelectionOffset;
+                    mIndicatorPaint.setColor(blendColor(mSelectedDotColor, mDotColor, fraction));
+                    canvas.drawCircle(x, mDotRadius, mDotRadius, mIndicatorPaint);
+                    x += mDotInterval + diameter;
+                    continue;
+                }
+                // the pill is drawn over the unselected dots
+                sprite = mDotSprite;
+            }
+            if (sprite != null) {
+                canvas.drawBitmap(sprite, x - sprite.getWidth() / 2f, mDotRadius - sprite.getHeight() / 2f, null);
+            }
             x += mDotInterval + diameter;
         }
+        if (scrolling && mSelectionStyle == SELECTION_STYLE_PILL) {
+            int step = diameter + mDotInterval;
+            float left = (mSelectedDot - first) * step + step * Math.max(0f, 2 * mSelectionOffset - 1);
+            float right = (mSelectedDot - first) * step + diameter + step * Math.min(1f, 2 * mSelectionOffset);
+            mIndicatorRect.set(left, 0, right, diameter);
+            mIndicatorPaint.setColor(mSelectedDotColor);
+            canvas.drawRoundRect(mIndicatorRect, mDotRadius, mDotRadius, mIndicatorPaint);
+        }
+        canvas.restoreToCount(saveCount);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_DRAW, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return 表示するドットの数
+     */
+    public int getVisibleDotCount() {
+        if (mMaxVisibleDots <= 0) {
+            return mDotCount;
+        }
+        return Math.min(mDotCount, mMaxVisibleDots);
+    }
+
+    /**
+     * @return 表示範囲の先頭のドット位置。選択中のドットが表示範囲の中央に来るようにずらす
+     */
+    public int getFirstVisibleDot() {
+        int visibleCount = getVisibleDotCount();
+        int first = mSelectedDot - visibleCount / 2;
+        return Math.max(0, Math.min(first, mDotCount - visibleCount));
+    }
+
+    private Bitmap getSprite(int index, int first, int visibleCount) {
+        if (index == mSelectedDot) {
+            return mSelectedDotSprite;
+        }
+        boolean leadingEdge = index == first && first > 0;
+        boolean trailingEdge = index == first + visibleCount - 1 && first + visibleCount < mDotCount;
+        if (leadingEdge || trailingEdge) {
+            return mEdgeDotSprite;
+        }
+        return mDotSprite;
+    }
+
+    private void updateSprites() {
+        mDotSprite = DotSpriteCache.get(mDotRadius, mDotColor);
+        mSelectedDotSprite = DotSpriteCache.get(mDotRadius, mSelectedDotColor);
+        mEdgeDotSprite = DotSpriteCache.get(Math.round(mDotRadius * EDGE_DOT_SCALE), mDotColor);
+    }
+
+    private void changeSelectedDot(int position) {
+        updateSelection(position, 0);
+    }
+
+    /**
+     * 選択位置とスクロール量を変更し、表示範囲が変わらなければ変化したドットの範囲だけを再描画する
+     */
+    private void updateSelection(int position, float offset) {
+        int previous = mSelectedDot;
+        int previousEnd = mSelectionOffset > 0 ? previous + 1 : previous;
+        int previousFirst = getFirstVisibleDot();
+        mSelectedDot = position;
+        mSelectionOffset = offset;
+        int first = getFirstVisibleDot();
+        if (first != previousFirst) {
+            invalidate();
+            return;
+        }
+        int end = offset > 0 ? position + 1 : position;
+        if (previousEnd < position || end < previous) {
+            // separated ranges, e.g. a jump by setSelectedDotPosition
+            invalidateDots(previous, previousEnd, first);
+            invalidateDots(position, end, first);
+            return;
+        }
+        invalidateDots(Math.min(previous, position), Math.max(previousEnd, end), first);
+    }
+
+    private void invalidateDots(int from, int to, int first) {
+        int diameter = 2 * mDotRadius;
+        int step = diameter + mDotInterval;
+        int contentLeft = getContentLeft();
+        int contentTop = getContentTop();
+        int left = contentLeft + (from - first) * step;
+        int right = contentLeft + (to - first) * step + diameter;
+        invalidate(left, contentTop, right, contentTop + diameter);
+    }
+
+    private int getDotsWidth(int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        return 2 * mDotRadius * count + mDotInterval * (count - 1);
+    }
+
+    /**
+     * @return ドットを描画する範囲の左端。計測したサイズより大きく配置された場合はパディングの内側で中央に寄せる
+     */
+    private int getContentLeft() {
+        int available = getWidth() - getPaddingLeft() - getPaddingRight();
+        return getPaddingLeft() + Math.max(0, (available - getDotsWidth(getVisibleDotCount())) / 2);
+    }
+
+    private int getContentTop() {
+        int available = getHeight() - getPaddingTop() - getPaddingBottom();
+        return getPaddingTop() + Math.max(0, (available - 2 * mDotRadius) / 2);
+    }
+
+    /**
+     * プロパティの変更を次のフレームでまとめて反映する
+     *
+     * @param update {@link #UPDATE_DRAW} か {@link #UPDATE_LAYOUT}
+     */
+    private void scheduleUpdate(int update) {
+        if (mPendingUpdates == 0) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                postOnAnimation(mUpdateRunnable);
+            } else {
+                post(mUpdateRunnable);
+            }
+        }
+        mPendingUpdates |= update;
+    }
+
+    private void applyPendingUpdates() {
+        int updates = mPendingUpdates;
+        mPendingUpdates = 0;
+        if ((updates & UPDATE_LAYOUT) != 0) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    private static int blendColor(int from, int to, float fraction) {
+        int a = blendChannel(Color.alpha(from), Color.alpha(to), fraction);
+        int r = blendChannel(Color.red(from), Color.red(to), fraction);
+        int g = blendChannel(Color.green(from), Color.green(to), fraction);
+        int b = blendChannel(Color.blue(from), Color.blue(to), fraction);
+        return Color.argb(a, r, g, b);
+    }
+
+    private static int blendChannel(int from, int to, float fraction) {
+        return from + Math.round((to - from) * fraction);
     }
 
     public int getSelectedDot() {
@@ -106,7 +347,12 @@ public class PageDots extends View {
     }
 
     public void setSelectedDot(int selectedDot) {
+        if (mSelectedDot == selectedDot && mSelectionOffset == 0) {
+            return;
+        }
         mSelectedDot = selectedDot;
+        mSelectionOffset = 0;
+        scheduleUpdate(UPDATE_DRAW);
     }
 
     public int getDotCount() {
@@ -114,7 +360,17 @@ public class PageDots extends View {
     }
 
     public void setDotCount(int dotCount) {
+        if (mDotCount == dotCount) {
+            return;
+        }
+        int previousVisibleCount = getVisibleDotCount();
         mDotCount = dotCount;
+        if (mSelectedDot >= dotCount) {
+            mSelectedDot = Math.max(0, dotCount - 1);
+            mSelectionOffset = 0;
+        }
+        // the size does not change if the count is still beyond the window
+        scheduleUpdate(previousVisibleCount == getVisibleDotCount() ? UPDATE_DRAW : UPDATE_LAYOUT);
     }
 
     public int getDotRadius() {
@@ -122,7 +378,12 @@ public class PageDots extends View {
     }
 
     public void setDotRadius(int dotRadius) {
+        if (mDotRadius == dotRadius) {
+            return;
+        }
         mDotRadius = dotRadius;
+        updateSprites();
+        scheduleUpdate(UPDATE_LAYOUT);
     }
 
     public int getDotInterval() {
@@ -130,15 +391,60 @@ public class PageDots extends View {
     }
 
     public void setDotInterval(int dotInterval) {
+        if (mDotInterval == dotInterval) {
+            return;
+        }
         mDotInterval = dotInterval;
+        scheduleUpdate(UPDATE_LAYOUT);
     }
 
     public void setDotColor(int dotColor) {
+        if (mDotColor == dotColor) {
+            return;
+        }
         mDotColor = dotColor;
+        updateSprites();
+        scheduleUpdate(UPDATE_DRAW);
     }
 
     public void setSelectedDotColor(int selectedDotColor) {
+        if (mSelectedDotColor == selectedDotColor) {
+            return;
+        }
         mSelectedDotColor = selectedDotColor;
+        updateSprites();
+        scheduleUpdate(UPDATE_DRAW);
+    }
+
+    public int getSelectionStyle() {
+        return mSelectionStyle;
+    }
+
+    /**
+     * @param selectionStyle {@link #SELECTION_STYLE_FADE} か {@link #SELECTION_STYLE_PILL}
+     */
+    public void setSelectionStyle(int selectionStyle) {
+        if (mSelectionStyle == selectionStyle) {
+            return;
+        }
+        mSelectionStyle = selectionStyle;
+        scheduleUpdate(UPDATE_DRAW);
+    }
+
+    public int getMaxVisibleDots() {
+        return mMaxVisibleDots;
+    }
+
+    /**
+     * @param maxVisibleDots 一度に表示するドットの最大数。0以下なら全て表示する
+     */
+    public void setMaxVisibleDots(int maxVisibleDots) {
+        if (mMaxVisibleDots == maxVisibleDots) {
+            return;
+        }
+        int previousVisibleCount = getVisibleDotCount();
+        mMaxVisibleDots = maxVisibleDots;
+        scheduleUpdate(previousVisibleCount == getVisibleDotCount() ? UPDATE_DRAW : UPDATE_LAYOUT);
     }
 
     /**
@@ -150,8 +456,7 @@ public class PageDots extends View {
         if (mDotCount - 1 <= mSelectedDot) {
             return false;
         }
-        mSelectedDot++;
-        invalidate();
+        changeSelectedDot(mSelectedDot + 1);
         return true;
     }
 
@@ -164,8 +469,7 @@ public class PageDots extends View {
         if (mSelectedDot <= 0) {
             return false;
         }
-        mSelectedDot--;
-        invalidate();
+        changeSelectedDot(mSelectedDot - 1);
         return true;
     }
 
@@ -173,7 +477,71 @@ public class PageDots extends View {
         if (position < 0 || position >= mDotCount) {
             return;
         }
-        mSelectedDot = position;
-        invalidate();
+        changeSelectedDot(position);
+    }
+
+    /**
+     * 選択位置と次のドットへのスクロール量を指定する。ViewPager のスクロールに合わせて毎フレーム呼び出せる
+     *
+     * @param position 選択中のドット位置
+     * @param offset 次のドットへのスクロール量 (0以上1未満)
+     */
+    public void setSelectionOffset(int position, float offset) {
+        if (position < 0 || position >= mDotCount) {
+            return;
+        }
+        if (offset < 0 || position == mDotCount - 1) {
+            offset = 0;
+        } else if (offset > 1) {
+            offset = 1;
+        }
+        if (position == mSelectedDot && offset == mSelectionOffset) {
+            return;
+        }
+        updateSelection(position, offset);
+    }
+
+    public float getSelectionOffset() {
+        return mSelectionOffset;
+    }
+
+    /**
+     * ViewPager のスクロールに合わせて選択位置を更新する。
+     * ViewPager に設定済みの {@link android.support.v4.view.ViewPager.OnPageChangeListener} は置き換えられるので、
+     * 他のリスナと併用する場合は {@link #getOnPageChangeListener()} に処理を委譲すること
+     */
+    public void setViewPager(ViewPager pager) {
+        pager.setOnPageChangeListener(getOnPageChangeListener());
+        if (pager.getAdapter() != null) {
+            setDotCount(pager.getAdapter().getCount());
+        }
+        setSelectionOffset(pager.getCurrentItem(), 0);
+    }
+
+    /**
+     * @return ViewPager のスクロールに合わせて選択位置を更新するリスナ
+     */
+    public ViewPager.OnPageChangeListener getOnPageChangeListener() {
+        if (mPageChangeListener == null) {
+            mPageChangeListener = new PagerObserver();
+        }
+        return mPageChangeListener;
+    }
+
+    private class PagerObserver implements ViewPager.OnPageChangeListener {
+        @Override
+        public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+            setSelectionOffset(position, positionOffset);
+        }
+
+        @Override
+        public void onPageSelected(int position) {
+            // the position is followed by onPageScrolled
+        }
+
+        @Override
+        public void onPageScrollStateChanged(int state) {
+            // nothing to do
+        }
     }
 }
\ No newline at end of file
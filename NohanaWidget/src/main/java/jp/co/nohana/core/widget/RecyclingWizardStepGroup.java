@@ -0,0 +1,601 @@
+package jp.co.nohana.core.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.database.DataSetObserver;
+import android.os.Build;
+import android.os.Parcelable;
+import android.support.v4.view.MotionEventCompat;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.Adapter;
+import android.widget.OverScroller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a {@link WizardStepGroup} variant for long flows, whose step views are provided by an {@link android.widget.Adapter}.
+ * Steps are arranged in a horizontally scrolling strip of the uniform step width,
+ * and only the visible step views are attached, recycled through the view types of the adapter.
+ * The step states are held by position, and applied to the step views whenever they are bound.
+ *
+ * The step width is given by stepWidth, or measured from the first step view if not given.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public class RecyclingWizardStepGroup extends ViewGroup {
+    private final DataSetObserver mDataSetObserver = new AdapterDataSetObserver();
+    /** the observer is registered only while attached, so that the adapter does not leak this view */
+    private boolean mDataSetObserverRegistered;
+    private final OnClickListener mChildObserver = new ChildStateObserver();
+    private final FlingRunnable mFlingRunnable = new FlingRunnable();
+    private final OverScroller mScroller;
+    private final int mTouchSlop;
+    private final int mMinimumFlingVelocity;
+    private final int mMaximumFlingVelocity;
+    private Adapter mAdapter;
+    private List<List<View>> mScrapViews;
+    private boolean mDataChanged;
+    private int mStepWidth;
+    private int mResolvedStepWidth;
+    private int mFirstPosition;
+    private int mCurrentPosition;
+    /** true if the current step is to be scrolled into view on the next layout */
+    private boolean mScrollToCurrentPending;
+    private boolean mInLayout;
+    private VelocityTracker mVelocityTracker;
+    private boolean mIsBeingDragged;
+    private float mInitialMotionX;
+    private float mLastMotionX;
+    private WizardStepGroup.OnWizardStepSelectedListener mStepListener;
+
+    public RecyclingWizardStepGroup(Context context) {
+        this(context, null);
+    }
+
+    public RecyclingWizardStepGroup(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public RecyclingWizardStepGroup(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinimumFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaximumFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        mScroller = new OverScroller(context);
+
+        TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.RecyclingWizardStepGroup, defStyle, 0);
+        mCurrentPosition = array.getInt(R.styleable.RecyclingWizardStepGroup_firstStepPosition, 0);
+        mStepWidth = array.getDimensionPixelSize(R.styleable.RecyclingWizardStepGroup_stepWidth, 0);
+        array.recycle();
+        mScrollToCurrentPending = true;
+    }
+
+    public Adapter getAdapter() {
+        return mAdapter;
+    }
+
+    public void setAdapter(Adapter adapter) {
+        unregisterDataSetObserver();
+        removeAllViewsInLayout();
+        mAdapter = adapter;
+        mScrapViews = null;
+        if (adapter != null) {
+            if (getWindowToken() != null) {
+                registerDataSetObserver();
+            }
+            int viewTypeCount = adapter.getViewTypeCount();
+            mScrapViews = new ArrayList<List<View>>(viewTypeCount);
+            for (int i = 0; i < viewTypeCount; i++) {
+                mScrapViews.add(new ArrayList<View>());
+            }
+        }
+        mFirstPosition = 0;
+        mDataChanged = true;
+        mScrollToCurrentPending = true;
+        requestLayout();
+        invalidate();
+    }
+
+    public int getStepWidth() {
+        return mStepWidth;
+    }
+
+    /**
+     * @param stepWidth the width of every step in pixels, or 0 to measure the first step view.
+     */
+    public void setStepWidth(int stepWidth) {
+        if (stepWidth == mStepWidth) {
+            return;
+        }
+        mStepWidth = stepWidth;
+        requestLayout();
+    }
+
+    public int getStepCount() {
+        return mAdapter != null ? mAdapter.getCount() : 0;
+    }
+
+    public int getFirstVisiblePosition() {
+        return mFirstPosition;
+    }
+
+    public int getCurrentStepAt() {
+        return mCurrentPosition;
+    }
+
+    public void setCurrentStepAt(int position, boolean notifyTabSelection) {
+        if (position >= getStepCount() || position < 0) {
+            // not capable
+            return;
+        }
+
+        int oldPosition = mCurrentPosition;
+        mCurrentPosition = position;
+        for (int i = Math.min(oldPosition, position); i <= Math.max(oldPosition, position); i++) {
+            View view = getStepView(i);
+            if (view != null) {
+                WizardStepGroup.applyStepState(view, i, position);
+            }
+        }
+        scrollToStep(position);
+        if (mStepListener != null && notifyTabSelection) {
+            View selected = getStepView(position);
+            mStepListener.onTabSelected(selected, selected != null ? selected.getId() : NO_ID, position);
+        }
+    }
+
+    public void nextStep() {
+        setCurrentStepAt(getCurrentStepAt() + 1, true);
+    }
+
+    public void previousStep() {
+        setCurrentStepAt(getCurrentStepAt() - 1, true);
+    }
+
+    /**
+     * @return the attached step view at the position, or null if it is not visible.
+     */
+    public View getStepView(int position) {
+        int index = position - mFirstPosition;
+        return index >= 0 && index < getChildCount() ? getChildAt(index) : null;
+    }
+
+    public void setOnWizardStepSelectedListener(WizardStepGroup.OnWizardStepSelectedListener listener) {
+        mStepListener = listener;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        int stepHeight = 0;
+        mResolvedStepWidth = mStepWidth;
+        if (getStepCount() > 0 && (mStepWidth <= 0 || MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.EXACTLY)) {
+            // measure the first step as the representative of all the steps
+            View step = getChildCount() > 0 && !mDataChanged ? getChildAt(0) : obtainView(0);
+            int unspecified = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+            step.measure(mStepWidth > 0 ? MeasureSpec.makeMeasureSpec(mStepWidth, MeasureSpec.EXACTLY) : unspecified, unspecified);
+            if (mStepWidth <= 0) {
+                mResolvedStepWidth = step.getMeasuredWidth();
+            }
+            stepHeight = step.getMeasuredHeight();
+            if (step.getParent() == null) {
+                addScrapView(step, 0);
+            }
+        }
+        int width = getStepCount() * mResolvedStepWidth + getPaddingLeft() + getPaddingRight();
+        int height = stepHeight + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(Math.max(width, getSuggestedMinimumWidth()), widthMeasureSpec),
+                resolveSize(Math.max(height, getSuggestedMinimumHeight()), heightMeasureSpec));
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_MEASURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        mInLayout = true;
+        if (mDataChanged || changed) {
+            // rebind all the visible steps, since the items or the step size may have been changed
+            recycleAllViews();
+            mDataChanged = false;
+            mCurrentPosition = Math.max(0, Math.min(mCurrentPosition, getStepCount() - 1));
+        }
+        int scrollX = Math.max(0, Math.min(getScrollX(), getMaxScrollX()));
+        if (scrollX != getScrollX()) {
+            scrollTo(scrollX, getScrollY());
+        }
+        if (mScrollToCurrentPending && getStepCount() > 0) {
+            // the current step has been set before the step width is known
+            scrollToStep(mCurrentPosition);
+        }
+        for (int i = 0; i < getChildCount(); i++) {
+            // the attached steps may have requested layout
+            layoutStep(getChildAt(i), mFirstPosition + i);
+        }
+        fillSteps();
+        mInLayout = false;
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_LAYOUT, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        if (!mInLayout) {
+            fillSteps();
+        }
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        // the drag may be stolen from a child, so the velocity is tracked from the beginning of the gesture
+        trackVelocity(ev);
+        int action = MotionEventCompat.getActionMasked(ev);
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                mInitialMotionX = mLastMotionX = ev.getX();
+                // catch the strip while flinging
+                mIsBeingDragged = !mScroller.isFinished();
+                stopFling();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (!mIsBeingDragged && Math.abs(ev.getX() - mInitialMotionX) > mTouchSlop) {
+                    startDrag(ev.getX());
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mIsBeingDragged = false;
+                break;
+            default:
+                break;
+        }
+        return mIsBeingDragged;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        trackVelocity(ev);
+        int action = MotionEventCompat.getActionMasked(ev);
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                mInitialMotionX = mLastMotionX = ev.getX();
+                stopFling();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (!mIsBeingDragged && Math.abs(ev.getX() - mInitialMotionX) > mTouchSlop) {
+                    startDrag(ev.getX());
+                }
+                if (mIsBeingDragged) {
+                    int scrollX = Math.max(0, Math.min(getScrollX() + (int) (mLastMotionX - ev.getX()), getMaxScrollX()));
+                    mLastMotionX = ev.getX();
+                    scrollTo(scrollX, getScrollY());
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (mIsBeingDragged) {
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
+                    int velocity = (int) mVelocityTracker.getXVelocity();
+                    if (Math.abs(velocity) > mMinimumFlingVelocity) {
+                        fling(-velocity);
+                    }
+                }
+                mIsBeingDragged = false;
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                mIsBeingDragged = false;
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mAdapter != null && !mDataSetObserverRegistered) {
+            registerDataSetObserver();
+            // the data set may have been changed while detached
+            mDataChanged = true;
+            requestLayout();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        unregisterDataSetObserver();
+        stopFling();
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof WizardStepGroup.WizardStepState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        WizardStepGroup.WizardStepState own = (WizardStepGroup.WizardStepState) state;
+        super.onRestoreInstanceState(own.getSuperState());
+        mCurrentPosition = own.getCurrentPosition();
+        // applied to the step views when they are bound again
+        mDataChanged = true;
+        requestLayout();
+        mScrollToCurrentPending = true;
+        if (getStepCount() > 0) {
+            setCurrentStepAt(mCurrentPosition, true);
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        WizardStepGroup.WizardStepState state = new WizardStepGroup.WizardStepState(super.onSaveInstanceState());
+        state.setCurrentPosition(mCurrentPosition);
+        return state;
+    }
+
+    @Override
+    protected void dispatchSaveInstanceState(SparseArray<Parcelable> container) {
+        // the step views are recycled, so their states belong to the adapter
+        dispatchFreezeSelfOnly(container);
+    }
+
+    @Override
+    protected void dispatchRestoreInstanceState(SparseArray<Parcelable> container) {
+        dispatchThawSelfOnly(container);
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return true;
+    }
+
+    @Override
+    protected int computeHorizontalScrollRange() {
+        return Math.max(getStripWidth(), getWidth());
+    }
+
+    @Override
+    protected int computeHorizontalScrollOffset() {
+        return Math.max(0, getScrollX());
+    }
+
+    @Override
+    protected int computeHorizontalScrollExtent() {
+        return getWidth();
+    }
+
+    private void registerDataSetObserver() {
+        mAdapter.registerDataSetObserver(mDataSetObserver);
+        mDataSetObserverRegistered = true;
+    }
+
+    private void unregisterDataSetObserver() {
+        if (mDataSetObserverRegistered) {
+            mAdapter.unregisterDataSetObserver(mDataSetObserver);
+            mDataSetObserverRegistered = false;
+        }
+    }
+
+    /**
+     * @return the width of all the steps laid out side by side, including the padding.
+     */
+    private int getStripWidth() {
+        return getPaddingLeft() + getStepCount() * mResolvedStepWidth + getPaddingRight();
+    }
+
+    private int getMaxScrollX() {
+        return Math.max(0, getStripWidth() - getWidth());
+    }
+
+    private void scrollToStep(int position) {
+        if (mResolvedStepWidth <= 0 || getWidth() == 0) {
+            // scrolled on the layout
+            mScrollToCurrentPending = true;
+            return;
+        }
+        mScrollToCurrentPending = false;
+        stopFling();
+        int left = position * mResolvedStepWidth;
+        int visibleWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        int scrollX = getScrollX();
+        if (left < scrollX) {
+            scrollX = left;
+        } else if (left + mResolvedStepWidth > scrollX + visibleWidth) {
+            scrollX = left + mResolvedStepWidth - visibleWidth;
+        }
+        scrollX = Math.max(0, Math.min(scrollX, getMaxScrollX()));
+        if (scrollX != getScrollX()) {
+            scrollTo(scrollX, getScrollY());
+        }
+    }
+
+    private void trackVelocity(MotionEvent ev) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        if (MotionEventCompat.getActionMasked(ev) == MotionEvent.ACTION_DOWN) {
+            mVelocityTracker.clear();
+        }
+        mVelocityTracker.addMovement(ev);
+    }
+
+    private void startDrag(float x) {
+        mIsBeingDragged = true;
+        mLastMotionX = x;
+        ViewGroup parent = (ViewGroup) getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(true);
+        }
+    }
+
+    private void fling(int velocity) {
+        mScroller.fling(getScrollX(), getScrollY(), velocity, 0, 0, getMaxScrollX(), 0, 0);
+        postFling();
+    }
+
+    private void stopFling() {
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
+        }
+        removeCallbacks(mFlingRunnable);
+    }
+
+    private void postFling() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postOnAnimation(mFlingRunnable);
+        } else {
+            post(mFlingRunnable);
+        }
+    }
+
+    /**
+     * Attaches the steps coming into the visible range, and recycles the steps going out of it.
+     */
+    private void fillSteps() {
+        int count = getStepCount();
+        if (count == 0 || mResolvedStepWidth <= 0 || getWidth() == 0) {
+            recycleAllViews();
+            return;
+        }
+        int scrollX = getScrollX();
+        int first = Math.max(0, Math.min((scrollX - getPaddingLeft()) / mResolvedStepWidth, count - 1));
+        int last = Math.max(0, Math.min((scrollX + getWidth() - getPaddingLeft() - 1) / mResolvedStepWidth, count - 1));
+
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            int position = mFirstPosition + i;
+            if (position < first || position > last) {
+                View child = getChildAt(i);
+                removeViewInLayout(child);
+                addScrapView(child, position);
+            }
+        }
+        if (getChildCount() == 0) {
+            mFirstPosition = first;
+        } else if (mFirstPosition < first) {
+            // the leading steps have been recycled
+            mFirstPosition = first;
+        }
+        for (int position = mFirstPosition - 1; position >= first; position--) {
+            addStep(position, 0);
+            mFirstPosition = position;
+        }
+        for (int position = mFirstPosition + getChildCount(); position <= last; position++) {
+            addStep(position, getChildCount());
+        }
+    }
+
+    private void addStep(int position, int index) {
+        View child = obtainView(position);
+        LayoutParams params = child.getLayoutParams();
+        if (params == null) {
+            params = generateDefaultLayoutParams();
+        }
+        addViewInLayout(child, index, params, true);
+        layoutStep(child, position);
+    }
+
+    private void layoutStep(View child, int position) {
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        child.measure(MeasureSpec.makeMeasureSpec(mResolvedStepWidth, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(Math.max(0, height), MeasureSpec.EXACTLY));
+        int left = getPaddingLeft() + position * mResolvedStepWidth;
+        child.layout(left, getPaddingTop(), left + mResolvedStepWidth, getPaddingTop() + child.getMeasuredHeight());
+    }
+
+    private View obtainView(int position) {
+        int viewType = mAdapter.getItemViewType(position);
+        View scrap = null;
+        if (viewType >= 0 && viewType < mScrapViews.size() && !mScrapViews.get(viewType).isEmpty()) {
+            List<View> scrapViews = mScrapViews.get(viewType);
+            scrap = scrapViews.remove(scrapViews.size() - 1);
+        }
+        View view = mAdapter.getView(position, scrap, this);
+        if (view != scrap && scrap != null) {
+            // the adapter did not reuse it, so keep it for the next time
+            mScrapViews.get(viewType).add(scrap);
+        }
+        WizardStepGroup.applyStepState(view, position, mCurrentPosition);
+        view.setOnClickListener(mChildObserver);
+        return view;
+    }
+
+    private void addScrapView(View view, int position) {
+        if (mAdapter == null || position >= mAdapter.getCount()) {
+            return;
+        }
+        int viewType = mAdapter.getItemViewType(position);
+        if (viewType >= 0 && viewType < mScrapViews.size()) {
+            mScrapViews.get(viewType).add(view);
+        }
+    }
+
+    private void recycleAllViews() {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            View child = getChildAt(i);
+            int position = mFirstPosition + i;
+            removeViewInLayout(child);
+            if (!mDataChanged) {
+                addScrapView(child, position);
+            }
+        }
+        if (mDataChanged && mScrapViews != null) {
+            // view types of the scrap views may have been changed
+            for (List<View> scrapViews : mScrapViews) {
+                scrapViews.clear();
+            }
+        }
+    }
+
+    private class ChildStateObserver implements OnClickListener {
+        @Override
+        public void onClick(View v) {
+            int index = indexOfChild(v);
+            if (index >= 0) {
+                setCurrentStepAt(mFirstPosition + index, true);
+            }
+        }
+    }
+
+    private class AdapterDataSetObserver extends DataSetObserver {
+        @Override
+        public void onChanged() {
+            mDataChanged = true;
+            requestLayout();
+        }
+
+        @Override
+        public void onInvalidated() {
+            mDataChanged = true;
+            requestLayout();
+        }
+    }
+
+    private class FlingRunnable implements Runnable {
+        @Override
+        public void run() {
+            if (!mScroller.computeScrollOffset()) {
+                return;
+            }
+            scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
+            postFling();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package jp.co.nohana.core.widget;
+
+/**
+ * Frame metrics of a scroll gesture of {@link ViewPagerContainableScrollView}, from the intercept decision until the scroll settles.
+ * The instance is reused for every gesture, so copy the values out if they are needed after the listener returns.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public final class ScrollMetrics {
+    /** the gesture has not been intercepted by either side */
+    public static final int DECISION_NONE = 0;
+    /** the gesture has been intercepted to scroll vertically */
+    public static final int DECISION_VERTICAL = 1;
+    /** the gesture has been left to the children, such as a {@link android.support.v4.view.ViewPager} */
+    public static final int DECISION_PAGER = 2;
+    private int mDecision;
+    private int mFrameCount;
+    private int mLateFrameCount;
+    private int mDroppedFrameCount;
+    private long mMaxFrameTimeNanos;
+    private long mDurationNanos;
+
+    ScrollMetrics() {
+    }
+
+    /**
+     * @return one of {@link #DECISION_NONE}, {@link #DECISION_VERTICAL} or {@link #DECISION_PAGER}.
+     */
+    public int getDecision() {
+        return mDecision;
+    }
+
+    /**
+     * @return the number of frames drawn during the gesture.
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return the number of frames that took longer than a refresh interval.
+     */
+    public int getLateFrameCount() {
+        return mLateFrameCount;
+    }
+
+    /**
+     * @return the number of refresh intervals skipped by late frames.
+     */
+    public int getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    public long getMaxFrameTimeNanos() {
+        return mMaxFrameTimeNanos;
+    }
+
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    void reset() {
+        mDecision = DECISION_NONE;
+        mFrameCount = 0;
+        mLateFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mMaxFrameTimeNanos = 0;
+        mDurationNanos = 0;
+    }
+
+    void setDecision(int decision) {
+        mDecision = decision;
+    }
+
+    void addFrame(long frameTimeNanos, long refreshIntervalNanos) {
+        mFrameCount++;
+        mDurationNanos += frameTimeNanos;
+        if (frameTimeNanos > mMaxFrameTimeNanos) {
+            mMaxFrameTimeNanos = frameTimeNanos;
+        }
+        // allow a half interval of jitter before counting the frame as late
+        long skipped = (frameTimeNanos + refreshIntervalNanos / 2) / refreshIntervalNanos - 1;
+        if (skipped > 0) {
+            mLateFrameCount++;
+            mDroppedFrameCount += skipped;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package jp.co.nohana.core.widget;
+
+import android.widget.Checkable;
+
+/**
+ * Binds a recycled checkable view to an item of {@link SelectionModel}.
+ * The binding only listens to the model while the view is attached to a window,
+ * so the number of listeners stays proportional to the number of visible views.
+ * @author nohana Team
+ */
+final class SelectionBinding implements SelectionModel.OnSelectionChangedListener {
+    private final Checkable mView;
+    private SelectionModel mModel;
+    private long mId;
+    private boolean mAttached;
+
+    public SelectionBinding(Checkable view) {
+        mView = view;
+    }
+
+    public void bind(SelectionModel model, long id) {
+        if (mAttached && mModel != null && mModel != model) {
+            mModel.unregisterOnSelectionChangedListener(this);
+        }
+        mModel = model;
+        mId = id;
+        if (mAttached) {
+            model.registerOnSelectionChangedListener(this);
+        }
+        mView.setChecked(model.isSelected(id));
+    }
+
+    public void unbind() {
+        if (mAttached && mModel != null) {
+            mModel.unregisterOnSelectionChangedListener(this);
+        }
+        mModel = null;
+    }
+
+    public boolean isBound() {
+        return mModel != null;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public void onAttachedToWindow() {
+        mAttached = true;
+        if (mModel != null) {
+            mModel.registerOnSelectionChangedListener(this);
+            // the selection may have been changed while detached
+            mView.setChecked(mModel.isSelected(mId));
+        }
+    }
+
+    public void onDetachedFromWindow() {
+        mAttached = false;
+        if (mModel != null) {
+            mModel.unregisterOnSelectionChangedListener(this);
+        }
+    }
+
+    /**
+     * Writes the new checked state of the view to the model.
+     * @return false if the model has rejected the change, so the view should keep its state.
+     */
+    public boolean onCheckedChanged(boolean checked) {
+        return mModel == null || mModel.setSelected(mId, checked);
+    }
+
+    @Override
+    public void onSelectionChanged(SelectionModel model, long id, boolean selected) {
+        if (model == mModel && id == mId) {
+            mView.setChecked(selected);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package jp.co.nohana.core.widget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selection state of adapter items, kept apart from views and keyed by the stable id of each item.
+ * The state is a sparse bitset of ids, so it does not need a view per item.
+ * Recycled {@link CompoundImageView}s or {@link CompoundRelativeLayout}s in a {@link android.widget.ListView} or {@link android.widget.GridView}
+ * bind to this model by id, and only the bound (visible) views are notified of changes.
+ *
+ * <pre>
+ * public View getView(int position, View convertView, ViewGroup parent) {
+ *     CompoundImageView view = (CompoundImageView) (convertView != null ? convertView : inflate(parent));
+ *     view.bindSelection(mSelectionModel, getItemId(position));
+ *     return view;
+ * }
+ * </pre>
+ *
+ * The choice modes are the same as {@link CheckableGroupController}.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public class SelectionModel {
+    private final SparseIdBitSet mSelected = new SparseIdBitSet();
+    private final List<OnSelectionChangedListener> mListeners = new ArrayList<OnSelectionChangedListener>();
+    private int mChoiceMode = CheckableGroupController.CHOICE_MODE_MULTIPLE;
+    private int mChoiceLimit = Integer.MAX_VALUE;
+    private long mLastSelectedId;
+    private boolean mHasLastSelected;
+
+    public int getChoiceMode() {
+        return mChoiceMode;
+    }
+
+    /**
+     * Changes the choice mode. Ids selected beyond the new mode are deselected, keeping the smaller ones.
+     * @param choiceMode one of the choice mode constants of {@link CheckableGroupController}.
+     */
+    public void setChoiceMode(int choiceMode) {
+        if (choiceMode != CheckableGroupController.CHOICE_MODE_SINGLE
+                && choiceMode != CheckableGroupController.CHOICE_MODE_MULTIPLE
+                && choiceMode != CheckableGroupController.CHOICE_MODE_MULTIPLE_LIMITED) {
+            throw new IllegalArgumentException("unknown choice mode: " + choiceMode);
+        }
+        mChoiceMode = choiceMode;
+        trimToChoiceMode();
+    }
+
+    public int getChoiceLimit() {
+        return mChoiceLimit;
+    }
+
+    /**
+     * Sets the maximum number of selected ids in {@link CheckableGroupController#CHOICE_MODE_MULTIPLE_LIMITED}.
+     */
+    public void setChoiceLimit(int choiceLimit) {
+        if (choiceLimit < 0) {
+            throw new IllegalArgumentException("choice limit must not be negative: " + choiceLimit);
+        }
+        mChoiceLimit = choiceLimit;
+        trimToChoiceMode();
+    }
+
+    public boolean isSelected(long id) {
+        return mSelected.get(id);
+    }
+
+    /**
+     * Selects or deselects the item.
+     * @return false if the selection has been rejected by the choice limit, true otherwise.
+     */
+    public boolean setSelected(long id, boolean selected) {
+        if (!selected) {
+            if (mSelected.clear(id)) {
+                if (mHasLastSelected && mLastSelectedId == id) {
+                    mHasLastSelected = false;
+                }
+                dispatchSelectionChanged(id, false);
+            }
+            return true;
+        }
+        if (mSelected.get(id)) {
+            return true;
+        }
+        if (mChoiceMode == CheckableGroupController.CHOICE_MODE_MULTIPLE_LIMITED && mSelected.cardinality() >= mChoiceLimit) {
+            return false;
+        }
+        if (mChoiceMode == CheckableGroupController.CHOICE_MODE_SINGLE && mHasLastSelected) {
+            long previous = mLastSelectedId;
+            mSelected.clear(previous);
+            dispatchSelectionChanged(previous, false);
+        }
+        mSelected.set(id);
+        mLastSelectedId = id;
+        mHasLastSelected = true;
+        dispatchSelectionChanged(id, true);
+        return true;
+    }
+
+    /**
+     * @return false if the selection has been rejected by the choice limit, true otherwise.
+     */
+    public boolean toggle(long id) {
+        return setSelected(id, !mSelected.get(id));
+    }
+
+    public int getSelectedCount() {
+        return mSelected.cardinality();
+    }
+
+    /**
+     * @return the selected ids in ascending order.
+     */
+    public long[] getSelectedIds() {
+        return mSelected.toArray();
+    }
+
+    public void clearSelection() {
+        long[] ids = mSelected.toArray();
+        mSelected.clear();
+        mHasLastSelected = false;
+        for (long id : ids) {
+            dispatchSelectionChanged(id, false);
+        }
+    }
+
+    public void registerOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void unregisterOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void trimToChoiceMode() {
+        int limit = mChoiceMode == CheckableGroupController.CHOICE_MODE_SINGLE ? 1
+                : mChoiceMode == CheckableGroupController.CHOICE_MODE_MULTIPLE_LIMITED ? mChoiceLimit : Integer.MAX_VALUE;
+        if (mSelected.cardinality() == 0) {
+            mHasLastSelected = false;
+            return;
+        }
+        long[] ids = mSelected.toArray();
+        for (int i = limit; i < ids.length; i++) {
+            mSelected.clear(ids[i]);
+            dispatchSelectionChanged(ids[i], false);
+        }
+        mLastSelectedId = ids[0];
+        mHasLastSelected = true;
+    }
+
+    private void dispatchSelectionChanged(long id, boolean selected) {
+        // iterate backwards since listeners may unregister themselves while being notified
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            if (i < mListeners.size()) {
+                mListeners.get(i).onSelectionChanged(this, id, selected);
+            }
+        }
+    }
+
+    public static interface OnSelectionChangedListener {
+        public void onSelectionChanged(SelectionModel model, long id, boolean selected);
+    }
+}
@@ -0,0 +1,108 @@
+package jp.co.nohana.core.widget;
+
+import java.util.Arrays;
+
+/**
+ * Bitset of long ids that only keeps the 64-bit words containing set bits.
+ * Words are kept sorted by their index and looked up with a binary search,
+ * so memory is proportional to the number of distinct id ranges in use, not to the largest id.
+ * @author nohana Team
+ */
+final class SparseIdBitSet {
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final int BIT_INDEX_MASK = (1 << ADDRESS_BITS_PER_WORD) - 1;
+    private static final int INITIAL_CAPACITY = 4;
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+    private long[] mWords = new long[INITIAL_CAPACITY];
+    private int mSize;
+    private int mCardinality;
+
+    public boolean get(long id) {
+        int index = Arrays.binarySearch(mKeys, 0, mSize, id >> ADDRESS_BITS_PER_WORD);
+        return index >= 0 && (mWords[index] & bit(id)) != 0;
+    }
+
+    /**
+     * @return true if the bit has been changed.
+     */
+    public boolean set(long id) {
+        long key = id >> ADDRESS_BITS_PER_WORD;
+        int index = Arrays.binarySearch(mKeys, 0, mSize, key);
+        if (index < 0) {
+            index = ~index;
+            insertWord(index, key);
+        }
+        if ((mWords[index] & bit(id)) != 0) {
+            return false;
+        }
+        mWords[index] |= bit(id);
+        mCardinality++;
+        return true;
+    }
+
+    /**
+     * @return true if the bit has been changed.
+     */
+    public boolean clear(long id) {
+        int index = Arrays.binarySearch(mKeys, 0, mSize, id >> ADDRESS_BITS_PER_WORD);
+        if (index < 0 || (mWords[index] & bit(id)) == 0) {
+            return false;
+        }
+        mWords[index] &= ~bit(id);
+        mCardinality--;
+        if (mWords[index] == 0) {
+            System.arraycopy(mKeys, index + 1, mKeys, index, mSize - index - 1);
+            System.arraycopy(mWords, index + 1, mWords, index, mSize - index - 1);
+            mSize--;
+        }
+        return true;
+    }
+
+    public void clear() {
+        mSize = 0;
+        mCardinality = 0;
+    }
+
+    public int cardinality() {
+        return mCardinality;
+    }
+
+    /**
+     * @return the set ids in ascending order.
+     */
+    public long[] toArray() {
+        long[] ids = new long[mCardinality];
+        int count = 0;
+        for (int i = 0; i < mSize; i++) {
+            long word = mWords[i];
+            long base = mKeys[i] << ADDRESS_BITS_PER_WORD;
+            while (word != 0) {
+                int offset = Long.numberOfTrailingZeros(word);
+                ids[count++] = base + offset;
+                word &= word - 1;
+            }
+        }
+        return ids;
+    }
+
+    private void insertWord(int index, long key) {
+        if (mSize == mKeys.length) {
+            int capacity = mSize * 2;
+            long[] keys = new long[capacity];
+            long[] words = new long[capacity];
+            System.arraycopy(mKeys, 0, keys, 0, mSize);
+            System.arraycopy(mWords, 0, words, 0, mSize);
+            mKeys = keys;
+            mWords = words;
+        }
+        System.arraycopy(mKeys, index, mKeys, index + 1, mSize - index);
+        System.arraycopy(mWords, index, mWords, index + 1, mSize - index);
+        mKeys[index] = key;
+        mWords[index] = 0;
+        mSize++;
+    }
+
+    private static long bit(long id) {
+        return 1L << (int) (id & BIT_INDEX_MASK);
+    }
+}
@@ -0,0 +1,181 @@
+package jp.co.nohana.core.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * This view group lays out its children directly as square cells of a grid, row by row, without any wrapper layout per cell.
+ * The number of columns is fixed by numColumns, or fitted to the width by columnWidth, and the cells stretch to fill the width.
+ * Each child is measured once per pass at the exact cell size, so layout params of the children are ignored.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public class SquareGridLayout extends ViewGroup {
+    private static final int DEFAULT_NUM_COLUMNS = 3;
+    private int mNumColumns;
+    private int mColumnWidth;
+    private int mHorizontalSpacing;
+    private int mVerticalSpacing;
+    private int mResolvedNumColumns;
+    private int mCellSize;
+
+    public SquareGridLayout(Context context) {
+        this(context, null);
+    }
+
+    public SquareGridLayout(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SquareGridLayout(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+
+        TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.SquareGridLayout, defStyle, 0);
+        mColumnWidth = array.getDimensionPixelSize(R.styleable.SquareGridLayout_columnWidth, 0);
+        mNumColumns = array.getInt(R.styleable.SquareGridLayout_numColumns, mColumnWidth > 0 ? 0 : DEFAULT_NUM_COLUMNS);
+        mHorizontalSpacing = array.getDimensionPixelSize(R.styleable.SquareGridLayout_horizontalSpacing, 0);
+        mVerticalSpacing = array.getDimensionPixelSize(R.styleable.SquareGridLayout_verticalSpacing, 0);
+        array.recycle();
+    }
+
+    public int getNumColumns() {
+        return mNumColumns;
+    }
+
+    /**
+     * @param numColumns the fixed number of columns, or 0 to fit the columns by the column width.
+     */
+    public void setNumColumns(int numColumns) {
+        if (numColumns < 0) {
+            throw new IllegalArgumentException("number of columns must not be negative: " + numColumns);
+        }
+        if (numColumns == mNumColumns) {
+            return;
+        }
+        mNumColumns = numColumns;
+        requestLayout();
+    }
+
+    public int getColumnWidth() {
+        return mColumnWidth;
+    }
+
+    /**
+     * @param columnWidth the minimum width of the columns in pixels, used when the number of columns is not fixed.
+     */
+    public void setColumnWidth(int columnWidth) {
+        if (columnWidth == mColumnWidth) {
+            return;
+        }
+        mColumnWidth = columnWidth;
+        requestLayout();
+    }
+
+    public int getHorizontalSpacing() {
+        return mHorizontalSpacing;
+    }
+
+    public void setHorizontalSpacing(int horizontalSpacing) {
+        if (horizontalSpacing == mHorizontalSpacing) {
+            return;
+        }
+        mHorizontalSpacing = horizontalSpacing;
+        requestLayout();
+    }
+
+    public int getVerticalSpacing() {
+        return mVerticalSpacing;
+    }
+
+    public void setVerticalSpacing(int verticalSpacing) {
+        if (verticalSpacing == mVerticalSpacing) {
+            return;
+        }
+        mVerticalSpacing = verticalSpacing;
+        requestLayout();
+    }
+
+    /**
+     * @return the number of columns of the last measurement.
+     */
+    public int getResolvedNumColumns() {
+        return mResolvedNumColumns;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int contentWidth;
+        if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED) {
+            // nothing to fill, so use the column width as is
+            int columns = Math.max(1, mNumColumns);
+            contentWidth = columns * mColumnWidth + (columns - 1) * mHorizontalSpacing;
+        } else {
+            contentWidth = Math.max(0, MeasureSpec.getSize(widthMeasureSpec) - horizontalPadding);
+        }
+        mResolvedNumColumns = resolveNumColumns(contentWidth);
+        mCellSize = Math.max(0, (contentWidth - (mResolvedNumColumns - 1) * mHorizontalSpacing) / mResolvedNumColumns);
+
+        int cellSpec = MeasureSpec.makeMeasureSpec(mCellSize, MeasureSpec.EXACTLY);
+        int visibleCount = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() != GONE) {
+                child.measure(cellSpec, cellSpec);
+                visibleCount++;
+            }
+        }
+        int rows = (visibleCount + mResolvedNumColumns - 1) / mResolvedNumColumns;
+        int height = rows * mCellSize + Math.max(0, rows - 1) * mVerticalSpacing + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(contentWidth + horizontalPadding, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_MEASURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        int column = 0;
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            child.layout(left, top, left + mCellSize, top + mCellSize);
+            if (++column < mResolvedNumColumns) {
+                left += mCellSize + mHorizontalSpacing;
+            } else {
+                column = 0;
+                left = getPaddingLeft();
+                top += mCellSize + mVerticalSpacing;
+            }
+        }
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_LAYOUT, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+
+    private int resolveNumColumns(int contentWidth) {
+        if (mNumColumns > 0) {
+            return mNumColumns;
+        }
+        if (mColumnWidth <= 0) {
+            return DEFAULT_NUM_COLUMNS;
+        }
+        return Math.max(1, (contentWidth + mHorizontalSpacing) / (mColumnWidth + mHorizontalSpacing));
+    }
+}
@@ -4,6 +4,10 @@ import android.content.Context;
 import android.util.AttributeSet;
 import android.widget.RelativeLayout;
 
+/**
+ * @deprecated this measures the {@link android.widget.RelativeLayout} twice on every pass, use {@link AspectRatioLayout} instead.
+ */
+@Deprecated
 @SuppressWarnings("unused") // public APIs
 public class SquareGridViewItemRelativeLayout extends RelativeLayout {
     public SquareGridViewItemRelativeLayout(Context context) {
@@ -11,7 +15,7 @@ public class SquareGridViewItemRelativeLayout extends RelativeLayout {
     }
 
     public SquareGridViewItemRelativeLayout(Context context, AttributeSet attrs) {
-        this(context, null, 0);
+        this(context, attrs, 0);
     }
 
     public SquareGridViewItemRelativeLayout(Context context, AttributeSet attrs, int defStyle) {
@@ -20,6 +24,21 @@ public class SquareGridViewItemRelativeLayout extends RelativeLayout {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
         super.onMeasure(widthMeasureSpec, widthMeasureSpec);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_MEASURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        super.onLayout(changed, l, t, r, b);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_LAYOUT, System.nanoTime() - start);
+        }
     }
 }
\ No newline at end of file
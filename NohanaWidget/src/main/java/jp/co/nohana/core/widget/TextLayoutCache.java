@@ -0,0 +1,126 @@
+package jp.co.nohana.core.widget;
+
+import android.graphics.Typeface;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+/**
+ * Process-wide bounded cache of measured labels, keyed by the text, the paint attributes affecting the measurement and the wrap width.
+ * Views showing the same label skip the text measurement on bind and on re-layout.
+ * Cached layouts keep their own paint shared by all views, so set the color of {@link android.text.Layout#getPaint()} right before drawing.
+ * Styled texts are not cached since their spans may change.
+ * This class is expected to be used on the UI thread.
+ * @author nohana Team
+ */
+final class TextLayoutCache {
+    private static final int MAX_LAYOUTS = 256;
+    private static final int MAX_DESIRED_WIDTHS = 256;
+    private static final LruCache<Key, Layout> LAYOUTS = new LruCache<Key, Layout>(MAX_LAYOUTS);
+    private static final LruCache<Key, Integer> DESIRED_WIDTHS = new LruCache<Key, Integer>(MAX_DESIRED_WIDTHS);
+    /** reused to look up without allocation */
+    private static final Key LOOKUP_KEY = new Key();
+
+    private TextLayoutCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @return the width of the text laid out in a single line.
+     */
+    public static int getDesiredWidth(CharSequence text, TextPaint paint) {
+        if (text instanceof Spanned) {
+            return (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+        }
+        Integer width = DESIRED_WIDTHS.get(LOOKUP_KEY.set(text, paint, -1));
+        LOOKUP_KEY.clear();
+        if (width == null) {
+            width = (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+            DESIRED_WIDTHS.put(new Key().set(text, paint, -1), width);
+        }
+        return width;
+    }
+
+    /**
+     * @return the center-aligned layout of the text wrapped at the width.
+     */
+    public static Layout getLayout(CharSequence text, TextPaint paint, int width) {
+        if (text instanceof Spanned) {
+            return newLayout(text, paint, width);
+        }
+        Layout layout = LAYOUTS.get(LOOKUP_KEY.set(text, paint, width));
+        LOOKUP_KEY.clear();
+        if (layout == null) {
+            layout = newLayout(text, new TextPaint(paint), width);
+            LAYOUTS.put(new Key().set(text, paint, width), layout);
+        }
+        return layout;
+    }
+
+    private static Layout newLayout(CharSequence text, TextPaint paint, int width) {
+        return new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_CENTER, 1f, 0f, false);
+    }
+
+    private static final class Key {
+        private CharSequence mText;
+        private float mTextSize;
+        private Typeface mTypeface;
+        private int mFlags;
+        private float mTextScaleX;
+        private float mTextSkewX;
+        private int mWidth;
+
+        public Key set(CharSequence text, TextPaint paint, int width) {
+            // keys put into the cache must not change with the text
+            mText = this == LOOKUP_KEY ? text : text.toString();
+            mTextSize = paint.getTextSize();
+            mTypeface = paint.getTypeface();
+            // such as fake bold or underline
+            mFlags = paint.getFlags();
+            mTextScaleX = paint.getTextScaleX();
+            mTextSkewX = paint.getTextSkewX();
+            mWidth = width;
+            return this;
+        }
+
+        /**
+         * Drops the reference to the looked up text.
+         */
+        public void clear() {
+            mText = null;
+            mTypeface = null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mWidth == key.mWidth && mTextSize == key.mTextSize && mTypeface == key.mTypeface && mFlags == key.mFlags
+                    && mTextScaleX == key.mTextScaleX && mTextSkewX == key.mTextSkewX && TextUtils.equals(mText, key.mText);
+        }
+
+        @Override
+        public int hashCode() {
+            // same as String#hashCode, without converting the text to a string
+            int result = 0;
+            for (int i = 0; i < mText.length(); i++) {
+                result = 31 * result + mText.charAt(i);
+            }
+            result = 31 * result + Float.floatToIntBits(mTextSize);
+            result = 31 * result + (mTypeface != null ? mTypeface.hashCode() : 0);
+            result = 31 * result + mFlags;
+            result = 31 * result + Float.floatToIntBits(mTextScaleX);
+            result = 31 * result + Float.floatToIntBits(mTextSkewX);
+            result = 31 * result + mWidth;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package jp.co.nohana.core.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.os.Build;
+import android.support.v4.view.MotionEventCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
+import android.widget.FrameLayout;
+import android.widget.OverScroller;
+
+/**
+ * This is a {@link android.widget.FrameLayout} whose content can be zoomed by pinch, panned by drag and flung.
+ * The transform is applied to the canvas on drawing, so the children are never measured or laid out again for zooming.
+ * Touch events are mapped to the transformed content before they are dispatched to the children,
+ * and the children stop receiving the gesture once it turns into a pinch or a pan.
+ * Gesture handling does not allocate any object per event.
+ *
+ * The scale is kept between minScale and maxScale, starting from defaultScale.
+ * The content can be panned only on the axes where it is larger than this view, and is centered otherwise.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public class TransformableFrameLayout extends FrameLayout {
+    private static final float DEFAULT_SCALE = 1f;
+    private static final float DEFAULT_MIN_SCALE = 1f;
+    private static final float DEFAULT_MAX_SCALE = 3f;
+    private final Matrix mMatrix = new Matrix();
+    private final Matrix mInverseMatrix = new Matrix();
+    private final FlingRunnable mFlingRunnable = new FlingRunnable();
+    private final OverScroller mScroller;
+    private final int mTouchSlop;
+    private final int mMinimumFlingVelocity;
+    private final int mMaximumFlingVelocity;
+    private float mDefaultScale;
+    private float mMinScale;
+    private float mMaxScale;
+    private float mScale;
+    private float mTranslationX;
+    private float mTranslationY;
+    private VelocityTracker mVelocityTracker;
+    private boolean mScaling;
+    private boolean mDragging;
+    private boolean mChildrenCancelled;
+    /** true if this gesture may zoom or pan, so this view is interested in it regardless of the children */
+    private boolean mTransformable;
+    private float mInitialFocusX;
+    private float mInitialFocusY;
+    private float mLastFocusX;
+    private float mLastFocusY;
+    private float mLastSpan;
+
+    public TransformableFrameLayout(Context context) {
+        this(context, null);
+    }
+
+    public TransformableFrameLayout(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public TransformableFrameLayout(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinimumFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaximumFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        mScroller = new OverScroller(context);
+
+        TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.TransformableFrameLayout, defStyle, 0);
+        mMinScale = array.getFloat(R.styleable.TransformableFrameLayout_minScale, DEFAULT_MIN_SCALE);
+        mMaxScale = array.getFloat(R.styleable.TransformableFrameLayout_maxScale, DEFAULT_MAX_SCALE);
+        mDefaultScale = array.getFloat(R.styleable.TransformableFrameLayout_defaultScale, DEFAULT_SCALE);
+        array.recycle();
+        if (mMinScale <= 0 || mMaxScale < mMinScale) {
+            throw new IllegalArgumentException("invalid scale range: " + mMinScale + " to " + mMaxScale);
+        }
+        mScale = clampScale(mDefaultScale);
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    /**
+     * Zooms around the pivot, which is in the coordinates of this view.
+     */
+    public void setScale(float scale, float pivotX, float pivotY) {
+        stopFling();
+        scaleBy(clampScale(scale) / mScale, pivotX, pivotY);
+    }
+
+    public float getMinScale() {
+        return mMinScale;
+    }
+
+    public float getMaxScale() {
+        return mMaxScale;
+    }
+
+    public void setScaleRange(float minScale, float maxScale) {
+        if (minScale <= 0 || maxScale < minScale) {
+            throw new IllegalArgumentException("invalid scale range: " + minScale + " to " + maxScale);
+        }
+        mMinScale = minScale;
+        mMaxScale = maxScale;
+        setScale(mScale, getWidth() / 2f, getHeight() / 2f);
+    }
+
+    /**
+     * Returns to the default scale, centering the content.
+     */
+    public void resetTransform() {
+        stopFling();
+        mScale = clampScale(mDefaultScale);
+        mTranslationX = 0;
+        mTranslationY = 0;
+        applyTransform();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        applyTransform();
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        int saveCount = canvas.save();
+        canvas.concat(mMatrix);
+        super.dispatchDraw(canvas);
+        canvas.restoreToCount(saveCount);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_DRAW, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        if (!mMatrix.isIdentity()) {
+            // the dirty rect of the child is not transformed, so redraw the whole content
+            invalidate();
+            return null;
+        }
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        handleGesture(ev);
+        if (mScaling || mDragging) {
+            if (!mChildrenCancelled) {
+                // the children have been receiving this gesture until now
+                int action = ev.getAction();
+                ev.setAction(MotionEvent.ACTION_CANCEL);
+                dispatchTransformedTouchEvent(ev);
+                ev.setAction(action);
+                mChildrenCancelled = true;
+            }
+            return true;
+        }
+        if (mChildrenCancelled) {
+            // the rest of the cancelled gesture is not for the children
+            return true;
+        }
+        boolean handled = dispatchTransformedTouchEvent(ev);
+        // keep receiving the gesture to zoom or pan, even if no child handles it
+        return handled || mTransformable;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stopFling();
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+        super.onDetachedFromWindow();
+    }
+
+    private boolean dispatchTransformedTouchEvent(MotionEvent ev) {
+        if (mMatrix.isIdentity()) {
+            return super.dispatchTouchEvent(ev);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            ev.transform(mInverseMatrix);
+            boolean handled = super.dispatchTouchEvent(ev);
+            ev.transform(mMatrix);
+            return handled;
+        }
+        // only the primary pointer can be moved before honeycomb
+        float x = ev.getX();
+        float y = ev.getY();
+        float contentX = (x - mTranslationX) / mScale;
+        float contentY = (y - mTranslationY) / mScale;
+        ev.setLocation(contentX, contentY);
+        boolean handled = super.dispatchTouchEvent(ev);
+        ev.setLocation(x, y);
+        return handled;
+    }
+
+    private void handleGesture(MotionEvent ev) {
+        int action = MotionEventCompat.getActionMasked(ev);
+        if (mVelocityTracker == null) {
+            // the stream may not start with ACTION_DOWN, such as after being intercepted by the parent
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        if (action == MotionEvent.ACTION_DOWN) {
+            stopFling();
+            mVelocityTracker.clear();
+            mScaling = false;
+            mDragging = false;
+            mChildrenCancelled = false;
+            mTransformable = mMaxScale > mMinScale || canPan();
+        }
+        mVelocityTracker.addMovement(ev);
+
+        // the pointer going up is excluded from the focus and the span
+        int skipIndex = action == MotionEventCompat.ACTION_POINTER_UP ? MotionEventCompat.getActionIndex(ev) : -1;
+        int pointerCount = ev.getPointerCount();
+        float sumX = 0;
+        float sumY = 0;
+        int count = 0;
+        for (int i = 0; i < pointerCount; i++) {
+            if (i != skipIndex) {
+                sumX += MotionEventCompat.getX(ev, i);
+                sumY += MotionEventCompat.getY(ev, i);
+                count++;
+            }
+        }
+        float focusX = count > 0 ? sumX / count : 0;
+        float focusY = count > 0 ? sumY / count : 0;
+        float span = 0;
+        if (count >= 2) {
+            float devSum = 0;
+            for (int i = 0; i < pointerCount; i++) {
+                if (i != skipIndex) {
+                    float dx = MotionEventCompat.getX(ev, i) - focusX;
+                    float dy = MotionEventCompat.getY(ev, i) - focusY;
+                    devSum += (float) Math.sqrt(dx * dx + dy * dy);
+                }
+            }
+            span = 2 * devSum / count;
+        }
+
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                mInitialFocusX = focusX;
+                mInitialFocusY = focusY;
+                break;
+            case MotionEventCompat.ACTION_POINTER_DOWN:
+            case MotionEventCompat.ACTION_POINTER_UP:
+                // the focus jumps as the pointers change, so start over from here
+                if (mScaling && count < 2) {
+                    // a pinch ending with a pointer left continues as a pan
+                    mDragging = canPan();
+                }
+                mScaling = count >= 2;
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mScaling) {
+                    if (mLastSpan > 0 && span > 0) {
+                        scaleBy(span / mLastSpan, focusX, focusY);
+                    }
+                    translateBy(focusX - mLastFocusX, focusY - mLastFocusY);
+                } else if (mDragging) {
+                    translateBy(focusX - mLastFocusX, focusY - mLastFocusY);
+                } else if (canPan() && (Math.abs(focusX - mInitialFocusX) > mTouchSlop || Math.abs(focusY - mInitialFocusY) > mTouchSlop)) {
+                    mDragging = true;
+                    if (getParent() != null) {
+                        getParent().requestDisallowInterceptTouchEvent(true);
+                    }
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (mDragging) {
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
+                    int velocityX = (int) mVelocityTracker.getXVelocity();
+                    int velocityY = (int) mVelocityTracker.getYVelocity();
+                    if (Math.abs(velocityX) > mMinimumFlingVelocity || Math.abs(velocityY) > mMinimumFlingVelocity) {
+                        fling(velocityX, velocityY);
+                    }
+                }
+                mScaling = false;
+                mDragging = false;
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                mScaling = false;
+                mDragging = false;
+                break;
+            default:
+                break;
+        }
+        if (mScaling && getParent() != null) {
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        mLastFocusX = focusX;
+        mLastFocusY = focusY;
+        mLastSpan = span;
+    }
+
+    private boolean canPan() {
+        return getContentWidth() > getWidth() || getContentHeight() > getHeight();
+    }
+
+    private float getContentWidth() {
+        return getWidth() * mScale;
+    }
+
+    private float getContentHeight() {
+        return getHeight() * mScale;
+    }
+
+    private void scaleBy(float factor, float pivotX, float pivotY) {
+        float scale = clampScale(mScale * factor);
+        factor = scale / mScale;
+        mScale = scale;
+        // keep the content point under the pivot
+        mTranslationX = pivotX - (pivotX - mTranslationX) * factor;
+        mTranslationY = pivotY - (pivotY - mTranslationY) * factor;
+        applyTransform();
+    }
+
+    private void translateBy(float dx, float dy) {
+        mTranslationX += dx;
+        mTranslationY += dy;
+        applyTransform();
+    }
+
+    private float clampScale(float scale) {
+        return Math.max(mMinScale, Math.min(scale, mMaxScale));
+    }
+
+    private float getMinTranslationX() {
+        return Math.min(0, getWidth() - getContentWidth());
+    }
+
+    private float getMinTranslationY() {
+        return Math.min(0, getHeight() - getContentHeight());
+    }
+
+    /**
+     * Clamps the translation into the content bounds, and applies the transform on the next draw.
+     */
+    private void applyTransform() {
+        if (getContentWidth() > getWidth()) {
+            mTranslationX = Math.max(getMinTranslationX(), Math.min(mTranslationX, 0));
+        } else {
+            mTranslationX = (getWidth() - getContentWidth()) / 2;
+        }
+        if (getContentHeight() > getHeight()) {
+            mTranslationY = Math.max(getMinTranslationY(), Math.min(mTranslationY, 0));
+        } else {
+            mTranslationY = (getHeight() - getContentHeight()) / 2;
+        }
+        mMatrix.setScale(mScale, mScale);
+        mMatrix.postTranslate(mTranslationX, mTranslationY);
+        mMatrix.invert(mInverseMatrix);
+        invalidate();
+    }
+
+    private void fling(int velocityX, int velocityY) {
+        mScroller.fling((int) mTranslationX, (int) mTranslationY, velocityX, velocityY,
+                (int) getMinTranslationX(), 0, (int) getMinTranslationY(), 0);
+        postFling();
+    }
+
+    private void stopFling() {
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
+        }
+        removeCallbacks(mFlingRunnable);
+    }
+
+    private void postFling() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postOnAnimation(mFlingRunnable);
+        } else {
+            post(mFlingRunnable);
+        }
+    }
+
+    private class FlingRunnable implements Runnable {
+        @Override
+        public void run() {
+            if (!mScroller.computeScrollOffset()) {
+                return;
+            }
+            mTranslationX = mScroller.getCurrX();
+            mTranslationY = mScroller.getCurrY();
+            applyTransform();
+            postFling();
+        }
+    }
+}
@@ -1,19 +1,43 @@
 package jp.co.nohana.core.widget;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.os.Build;
+import android.support.v4.view.MotionEventCompat;
 import android.util.AttributeSet;
-import android.view.GestureDetector;
-import android.view.GestureDetector.SimpleOnGestureListener;
+import android.view.Choreographer;
+import android.view.Display;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
+import android.view.WindowManager;
 import android.widget.ScrollView;
 
 /**
  * This is a {@link android.widget.ScrollView} compatibility that enables containing {@link android.support.v4.view.ViewPager}.
  * {@link android.support.v4.view.ViewPager} swipe action will not be properly performed on some devices while it is in the scrollable component, so use this to avoid such a problem.
+ *
+ * The direction of each gesture is locked once it moves beyond the touch slop.
+ * Horizontal gestures are left to the children for the rest of the gesture, and vertical ones scroll this view.
+ * Diagonal moves that cross the slop on both axes at once are decided by the current velocity.
+ *
+ * On API 16 or later, frame metrics of each gesture can be observed with {@link #setOnScrollMetricsListener(OnScrollMetricsListener)}.
+ * Frames are monitored with {@link android.view.Choreographer} only while a listener is set and a gesture or a fling is in progress.
  */
 @SuppressWarnings("unused") // public APIs
 public class ViewPagerContainableScrollView extends ScrollView {
-    private GestureDetector mGestureDetector;
+    private static final int DIRECTION_UNDECIDED = 0;
+    private static final int DIRECTION_VERTICAL = 1;
+    private static final int DIRECTION_HORIZONTAL = 2;
+    private static final int INVALID_POINTER = -1;
+    private final int mTouchSlop;
+    private VelocityTracker mVelocityTracker;
+    private int mDirection = DIRECTION_UNDECIDED;
+    private int mActivePointerId = INVALID_POINTER;
+    private float mInitialMotionX;
+    private float mInitialMotionY;
+    private OnScrollMetricsListener mScrollMetricsListener;
+    private FrameMonitor mFrameMonitor;
 
     public ViewPagerContainableScrollView(Context context) {
         this(context, null);
@@ -26,22 +50,236 @@ public class ViewPagerContainableScrollView extends ScrollView {
     public ViewPagerContainableScrollView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
 
-        mGestureDetector = new GestureDetector(context, new YScrollDetector());
+        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
         setFadingEdgeLength(0);
     }
 
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
-        return super.onInterceptTouchEvent(ev) && mGestureDetector.onTouchEvent(ev);
+        int action = MotionEventCompat.getActionMasked(ev);
+        if (action == MotionEvent.ACTION_DOWN) {
+            mActivePointerId = MotionEventCompat.getPointerId(ev, 0);
+            mInitialMotionX = ev.getX();
+            mInitialMotionY = ev.getY();
+            mDirection = DIRECTION_UNDECIDED;
+            obtainVelocityTracker().clear();
+        }
+        if (mDirection == DIRECTION_HORIZONTAL) {
+            // the children keep the gesture until it ends
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                mDirection = DIRECTION_UNDECIDED;
+            }
+            return false;
+        }
+        // a gesture may come without the down, or continue after the tracker was recycled on detach
+        obtainVelocityTracker().addMovement(ev);
+
+        switch (action) {
+            case MotionEvent.ACTION_MOVE:
+                if (mDirection == DIRECTION_UNDECIDED && !lockDirection(ev)) {
+                    return false;
+                }
+                if (mDirection == DIRECTION_HORIZONTAL) {
+                    return false;
+                }
+                break;
+            case MotionEventCompat.ACTION_POINTER_UP:
+                onSecondaryPointerUp(ev);
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mDirection = DIRECTION_UNDECIDED;
+                mActivePointerId = INVALID_POINTER;
+                break;
+            default:
+                break;
+        }
+        return super.onInterceptTouchEvent(ev);
     }
 
-    private static class YScrollDetector extends SimpleOnGestureListener {
-        @Override
-        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-            if(Math.abs(distanceY) > Math.abs(distanceX)) {
-                return true;
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        if (mFrameMonitor != null) {
+            int action = MotionEventCompat.getActionMasked(ev);
+            if (action == MotionEvent.ACTION_DOWN) {
+                mFrameMonitor.onDown();
+            } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                mFrameMonitor.mTouching = false;
             }
+        }
+        return super.dispatchTouchEvent(ev);
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        if (mFrameMonitor != null) {
+            // scrolled without interception, such as a drag started on this view itself or a fling
+            mFrameMonitor.start(ScrollMetrics.DECISION_VERTICAL);
+            mFrameMonitor.mScrolled = true;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mFrameMonitor != null) {
+            mFrameMonitor.stop();
+        }
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Locks the direction of the gesture if it has moved beyond the touch slop.
+     * @return true if the direction has been locked.
+     */
+    private boolean lockDirection(MotionEvent ev) {
+        int pointerIndex = MotionEventCompat.findPointerIndex(ev, mActivePointerId);
+        if (pointerIndex < 0) {
+            return false;
+        }
+        float xDiff = Math.abs(MotionEventCompat.getX(ev, pointerIndex) - mInitialMotionX);
+        float yDiff = Math.abs(MotionEventCompat.getY(ev, pointerIndex) - mInitialMotionY);
+        boolean horizontal = xDiff > mTouchSlop;
+        boolean vertical = yDiff > mTouchSlop;
+        if (!horizontal && !vertical) {
             return false;
         }
+        if (horizontal && vertical) {
+            // a diagonal move, so follow the direction the finger is heading now
+            VelocityTracker velocityTracker = obtainVelocityTracker();
+            velocityTracker.computeCurrentVelocity(1000);
+            horizontal = Math.abs(velocityTracker.getXVelocity(mActivePointerId)) > Math.abs(velocityTracker.getYVelocity(mActivePointerId));
+        }
+        mDirection = horizontal ? DIRECTION_HORIZONTAL : DIRECTION_VERTICAL;
+        if (mFrameMonitor != null) {
+            mFrameMonitor.start(horizontal ? ScrollMetrics.DECISION_PAGER : ScrollMetrics.DECISION_VERTICAL);
+        }
+        return true;
+    }
+
+    private VelocityTracker obtainVelocityTracker() {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        return mVelocityTracker;
+    }
+
+    public OnScrollMetricsListener getOnScrollMetricsListener() {
+        return mScrollMetricsListener;
+    }
+
+    /**
+     * Starts reporting frame metrics of each gesture to the listener, or stops it if the listener is null.
+     * This has no effect before API 16, since frame timings are not available.
+     */
+    public void setOnScrollMetricsListener(OnScrollMetricsListener listener) {
+        mScrollMetricsListener = listener;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        if (listener == null) {
+            if (mFrameMonitor != null) {
+                mFrameMonitor.stop();
+                mFrameMonitor = null;
+            }
+        } else if (mFrameMonitor == null) {
+            mFrameMonitor = new FrameMonitor();
+        }
+    }
+
+    private void dispatchScrollMetrics(ScrollMetrics metrics) {
+        if (mScrollMetricsListener != null) {
+            mScrollMetricsListener.onScrollMetrics(this, metrics);
+        }
+    }
+
+    private long getRefreshIntervalNanos() {
+        Display display = ((WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+        float refreshRate = display.getRefreshRate();
+        return (long) (1000000000 / (refreshRate > 0 ? refreshRate : 60));
+    }
+
+    private void onSecondaryPointerUp(MotionEvent ev) {
+        int pointerIndex = MotionEventCompat.getActionIndex(ev);
+        if (MotionEventCompat.getPointerId(ev, pointerIndex) != mActivePointerId) {
+            return;
+        }
+        // the active pointer is going up, so choose another one and measure the slop from there
+        int newPointerIndex = pointerIndex == 0 ? 1 : 0;
+        mActivePointerId = MotionEventCompat.getPointerId(ev, newPointerIndex);
+        mInitialMotionX = MotionEventCompat.getX(ev, newPointerIndex);
+        mInitialMotionY = MotionEventCompat.getY(ev, newPointerIndex);
+    }
+
+    public static interface OnScrollMetricsListener {
+        /**
+         * Called on the UI thread when a gesture has ended and the scroll has settled.
+         * @param metrics the metrics of the gesture, which are reused for the next gesture.
+         */
+        public void onScrollMetrics(ViewPagerContainableScrollView view, ScrollMetrics metrics);
+    }
+
+    /**
+     * Measures the frame intervals from the intercept decision until a frame without touch or scroll.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameMonitor implements Choreographer.FrameCallback {
+        private final ScrollMetrics mMetrics = new ScrollMetrics();
+        private boolean mMonitoring;
+        private boolean mTouching;
+        private boolean mScrolled;
+        private long mLastFrameTimeNanos;
+        private long mRefreshIntervalNanos;
+
+        public void start(int decision) {
+            if (mMonitoring) {
+                return;
+            }
+            mMonitoring = true;
+            mMetrics.reset();
+            mMetrics.setDecision(decision);
+            mLastFrameTimeNanos = 0;
+            mRefreshIntervalNanos = getRefreshIntervalNanos();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        public void stop() {
+            if (mMonitoring) {
+                mMonitoring = false;
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+        }
+
+        /**
+         * Ends the gesture still being monitored, such as a fling caught by this touch,
+         * so that the new gesture starts over with its own intercept decision.
+         */
+        public void onDown() {
+            if (mMonitoring) {
+                stop();
+                dispatchScrollMetrics(mMetrics);
+            }
+            mScrolled = false;
+            mTouching = true;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mLastFrameTimeNanos != 0) {
+                mMetrics.addFrame(frameTimeNanos - mLastFrameTimeNanos, mRefreshIntervalNanos);
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+            if (!mTouching && !mScrolled) {
+                mMonitoring = false;
+                dispatchScrollMetrics(mMetrics);
+                return;
+            }
+            mScrolled = false;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
     }
-}
\ No newline at end of file
+}
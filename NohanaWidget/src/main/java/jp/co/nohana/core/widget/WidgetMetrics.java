@@ -0,0 +1,33 @@
+package jp.co.nohana.core.widget;
+
+/**
+ * Install point of {@link WidgetMetricsSink}.
+ * The widgets read the installed sink once per pass, and measure nothing if it is not installed.
+ * @author nohana Team
+ */
+@SuppressWarnings("unused") // public APIs
+public final class WidgetMetrics {
+    public static final int PHASE_MEASURE = 0;
+    public static final int PHASE_LAYOUT = 1;
+    public static final int PHASE_DRAW = 2;
+    static volatile WidgetMetricsSink sSink;
+
+    private WidgetMetrics() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Starts reporting the durations of all widgets to the sink, replacing the installed one if any.
+     */
+    public static void install(WidgetMetricsSink sink) {
+        sSink = sink;
+    }
+
+    public static void uninstall() {
+        sSink = null;
+    }
+
+    public static WidgetMetricsSink getInstalledSink() {
+        return sSink;
+    }
+}
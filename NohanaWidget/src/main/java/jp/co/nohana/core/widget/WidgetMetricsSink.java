@@ -0,0 +1,18 @@
+package jp.co.nohana.core.widget;
+
+import android.view.View;
+
+/**
+ * Receives the durations of measure, layout and draw passes of the widgets in this library.
+ * Install an implementation with {@link WidgetMetrics#install(WidgetMetricsSink)} to aggregate the durations and the invocation counts per widget class.
+ * This is called on the UI thread in the middle of a traversal, so implementations should only record the values and return quickly.
+ * @author nohana Team
+ */
+public interface WidgetMetricsSink {
+    /**
+     * @param widget the measured, laid out or drawn widget.
+     * @param phase one of {@link WidgetMetrics#PHASE_MEASURE}, {@link WidgetMetrics#PHASE_LAYOUT} or {@link WidgetMetrics#PHASE_DRAW}.
+     * @param durationNanos the duration of the pass, including the passes of the children for view groups.
+     */
+    public void onPhaseFinished(View widget, int phase, long durationNanos);
+}
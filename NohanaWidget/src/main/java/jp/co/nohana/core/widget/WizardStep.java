@@ -0,0 +1,23 @@
+package jp.co.nohana.core.widget;
+
+/**
+ * Implemented by the step views of {@link WizardStepGroup} to receive the state of the step they indicate.
+ * The state is exposed to the drawable state as {@code state_step_done}, {@code state_step_current} or {@code state_step_upcoming},
+ * so that selectors can style each kind of step.
+ * @author nohana Team
+ */
+public interface WizardStep {
+    /** the view is not used as a wizard step */
+    public static final int STEP_STATE_NONE = 0;
+    public static final int STEP_STATE_DONE = 1;
+    public static final int STEP_STATE_CURRENT = 2;
+    public static final int STEP_STATE_UPCOMING = 3;
+
+    public int getStepState();
+
+    /**
+     * @param stepState one of the step state constants.
+     * @throws java.lang.IllegalArgumentException if the step state is not one of the step state constants.
+     */
+    public void setStepState(int stepState);
+}
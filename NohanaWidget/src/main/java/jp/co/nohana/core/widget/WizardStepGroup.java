@@ -9,18 +9,30 @@ import android.view.View;
 import android.widget.Checkable;
 import android.widget.LinearLayout;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * This view group contains wizard step views to indicate the current step.
  * Each wizard step view implements {@link android.widget.Checkable}, so current step is treated as checked state.
- * Ideally, we need to define our own state such as state_current_step, or state_done_step, state_undone_step...
+ * Step views implementing {@link WizardStep} also receive state_step_done, state_step_current or state_step_upcoming,
+ * so that selectors can style each kind of step.
  *
  * This group manages the current step position, and set the position results to check all steps up to the item at the position.
+ * On a step change, only the steps between the old and the new position are updated.
+ * Step positions and the number of steps are cached as the children are added or removed.
  * @author keishin.yokomaku
  */
 public class WizardStepGroup extends LinearLayout {
+    private static final int NO_POSITION = -1;
     private OnClickListener mChildObserver;
     private OnHierarchyChangeListener mHierarchyListener;
     private int mCurrentPosition;
+    /** the position whose checked states have been applied to the children, or {@link #NO_POSITION} if they may be out of date */
+    private int mAppliedPosition = NO_POSITION;
+    private int mStepCount;
+    private final Map<View, Integer> mPositions = new IdentityHashMap<View, Integer>();
+    private boolean mPositionsDirty;
     private OnWizardStepSelectedListener mStepListener;
 
     public WizardStepGroup(Context context) {
@@ -50,6 +62,26 @@ public class WizardStepGroup extends LinearLayout {
         setCurrentStepAt(mCurrentPosition, true);
     }
 
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_MEASURE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        WidgetMetricsSink sink = WidgetMetrics.sSink;
+        long start = sink != null ? System.nanoTime() : 0;
+        super.onLayout(changed, l, t, r, b);
+        if (sink != null) {
+            sink.onPhaseFinished(this, WidgetMetrics.PHASE_LAYOUT, System.nanoTime() - start);
+        }
+    }
+
     @Override
     protected void onRestoreInstanceState(Parcelable state) {
         if (!(state instanceof WizardStepState)) {
@@ -70,14 +102,7 @@ public class WizardStepGroup extends LinearLayout {
     }
 
     public int getChildStepsCound() {
-        int count = 0;
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (view instanceof Checkable) {
-                count++;
-            }
-        }
-        return count;
+        return mStepCount;
     }
 
     public void setCurrentStepAt(int position, boolean notifyTabSelection) {
@@ -88,14 +113,13 @@ public class WizardStepGroup extends LinearLayout {
 
         View selected = getChildAt(position);
         mCurrentPosition = position;
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (!(view instanceof Checkable)) {
-                continue;
-            }
-            Checkable checkable = (Checkable) view;
-            checkable.setChecked(i <= position);
+        if (mAppliedPosition == NO_POSITION) {
+            updateSteps(0, getChildCount() - 1, position);
+        } else {
+            // the selected step may have been toggled by its click
+            updateSteps(Math.min(mAppliedPosition, position), Math.max(mAppliedPosition, position), position);
         }
+        mAppliedPosition = position;
         if (mStepListener != null && notifyTabSelection) {
             mStepListener.onTabSelected(selected, selected.getId(), position);
         }
@@ -111,13 +135,15 @@ public class WizardStepGroup extends LinearLayout {
     }
 
     public int getViewPosition(View v) {
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            if (view.equals(v)) {
-                return i;
+        if (mPositionsDirty) {
+            mPositions.clear();
+            for (int i = 0; i < getChildCount(); i++) {
+                mPositions.put(getChildAt(i), i);
             }
+            mPositionsDirty = false;
         }
-        return -1;
+        Integer position = mPositions.get(v);
+        return position != null ? position : -1;
     }
 
     public void nextStep() {
@@ -132,6 +158,35 @@ public class WizardStepGroup extends LinearLayout {
         mStepListener = listener;
     }
 
+    private void updateSteps(int from, int to, int position) {
+        for (int i = from; i <= to; i++) {
+            applyStepState(getChildAt(i), i, position);
+        }
+    }
+
+    /**
+     * Applies the state of the step at the index to the step view, for the current position.
+     */
+    static void applyStepState(View view, int index, int position) {
+        if (view instanceof WizardStep) {
+            ((WizardStep) view).setStepState(index < position ? WizardStep.STEP_STATE_DONE
+                    : index == position ? WizardStep.STEP_STATE_CURRENT : WizardStep.STEP_STATE_UPCOMING);
+        }
+        if (view instanceof Checkable) {
+            Checkable checkable = (Checkable) view;
+            boolean checked = index <= position;
+            if (checkable.isChecked() != checked) {
+                checkable.setChecked(checked);
+            }
+        }
+    }
+
+    private void onStepsChanged() {
+        mPositionsDirty = true;
+        // positions of the following steps have been shifted
+        mAppliedPosition = NO_POSITION;
+    }
+
     private class ChildStateObserver implements OnClickListener {
         @Override
         public void onClick(View v) {
@@ -143,16 +198,25 @@ public class WizardStepGroup extends LinearLayout {
     private class PassThroughHierarchyChangeListener implements OnHierarchyChangeListener {
         @Override
         public void onChildViewAdded(View parent, View child) {
-            if (parent == WizardStepGroup.this && child instanceof Checkable) {
+            if (parent != WizardStepGroup.this) {
+                return;
+            }
+            onStepsChanged();
+            if (child instanceof Checkable) {
                 child.setOnClickListener(mChildObserver);
-                
+                mStepCount++;
             }
         }
 
         @Override
         public void onChildViewRemoved(View parent, View child) {
-            if (parent == WizardStepGroup.this && child instanceof Checkable) {
+            if (parent != WizardStepGroup.this) {
+                return;
+            }
+            onStepsChanged();
+            if (child instanceof Checkable) {
                 child.setOnClickListener(null);
+                mStepCount--;
             }
         }
     }
@@ -161,7 +225,7 @@ public class WizardStepGroup extends LinearLayout {
         public void onTabSelected(View view, int id, int position);
     }
 
-    private static class WizardStepState extends BaseSavedState {
+    static class WizardStepState extends BaseSavedState {
         @SuppressWarnings("unused")
         public static final Creator<WizardStepState> CREATOR = new Creator<WizardStepState>() {
             @Override
@@ -0,0 +1,75 @@
+package jp.co.nohana.core.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Group queries and updates of {@link CheckedStateIndex}, which back the compound view groups, at 10, 100 and 1000 children.
+ * Every other child is checked.
+ * @author nohana Team
+ */
+@State(Scope.Thread)
+public class CheckedStateIndexBenchmark {
+    @Param({"10", "100", "1000"})
+    public int mChildCount;
+    private CheckedStateIndex<Object> mIndex;
+    private Object[] mChildren;
+
+    @Setup
+    public void setUp() {
+        mIndex = new CheckedStateIndex<Object>();
+        mChildren = new Object[mChildCount];
+        for (int i = 0; i < mChildCount; i++) {
+            mChildren[i] = new Object();
+            mIndex.onChildAdded(mChildren[i], i, i % 2 == 0);
+        }
+    }
+
+    @Benchmark
+    public int[] getCheckedPositions() {
+        return mIndex.getCheckedPositions();
+    }
+
+    @Benchmark
+    public int getCheckedCount() {
+        return mIndex.getCheckedCount();
+    }
+
+    @Benchmark
+    public int iterateCheckedPositions() {
+        int sum = 0;
+        for (int i = mIndex.nextCheckedPosition(0); i >= 0; i = mIndex.nextCheckedPosition(i + 1)) {
+            sum += i;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int toggleMiddleChild() {
+        Object child = mChildren[mChildCount / 2];
+        mIndex.onChildCheckedChanged(child, !mIndex.isChecked(mIndex.getPosition(child)));
+        return mIndex.getCheckedCount();
+    }
+
+    @Benchmark
+    public int insertAndRemoveFirstChild() {
+        // shifts all the positions after the first child twice
+        Object child = new Object();
+        mIndex.onChildAdded(child, 0, true);
+        mIndex.onChildRemoved(child);
+        return mIndex.getCheckedCount();
+    }
+
+    @Benchmark
+    public CheckedStateDelta batchToggleAll() {
+        mIndex.beginBatch();
+        for (Object child : mChildren) {
+            mIndex.onChildCheckedChanged(child, !mIndex.isChecked(mIndex.getPosition(child)));
+        }
+        mIndex.endBatch();
+        return mIndex.takeDelta();
+    }
+}
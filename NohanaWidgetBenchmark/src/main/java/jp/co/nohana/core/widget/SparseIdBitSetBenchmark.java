@@ -0,0 +1,60 @@
+package jp.co.nohana.core.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Lookups and updates of {@link SparseIdBitSet} and {@link SelectionModel} over clustered and scattered ids.
+ * @author nohana Team
+ */
+@State(Scope.Thread)
+public class SparseIdBitSetBenchmark {
+    @Param({"10", "100", "1000"})
+    public int mSelectedCount;
+    @Param({"1", "1000003"})
+    public long mIdStride;
+    private SparseIdBitSet mBits;
+    private SelectionModel mModel;
+    private long mProbeId;
+
+    @Setup
+    public void setUp() {
+        mBits = new SparseIdBitSet();
+        mModel = new SelectionModel();
+        for (int i = 0; i < mSelectedCount; i++) {
+            mBits.set(i * mIdStride);
+            mModel.setSelected(i * mIdStride, true);
+        }
+        mProbeId = (mSelectedCount / 2) * mIdStride;
+    }
+
+    @Benchmark
+    public boolean get() {
+        return mBits.get(mProbeId);
+    }
+
+    @Benchmark
+    public boolean clearAndSet() {
+        mBits.clear(mProbeId);
+        return mBits.set(mProbeId);
+    }
+
+    @Benchmark
+    public int cardinality() {
+        return mBits.cardinality();
+    }
+
+    @Benchmark
+    public long[] toArray() {
+        return mBits.toArray();
+    }
+
+    @Benchmark
+    public boolean toggleSelection() {
+        mModel.toggle(mProbeId);
+        return mModel.isSelected(mProbeId);
+    }
+}
@@ -0,0 +1,240 @@
+package jp.co.nohana.core.widget;
+
+import android.widget.Checkable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author nohana Team
+ */
+public class CheckableGroupControllerTest {
+    private static final int CHILD_COUNT = 5;
+    private final List<Object> mChildren = new ArrayList<Object>();
+    private final List<CheckedStateDelta> mDeltas = new ArrayList<CheckedStateDelta>();
+    private CheckableGroupController<FakeCheckable> mController;
+
+    @Before
+    public void setUp() {
+        mController = new CheckableGroupController<FakeCheckable>(new FakeHost(), FakeCheckable.class, new CheckableGroupController.Callback() {
+            @Override
+            public void onCheckedStateChanged(CheckedStateDelta delta) {
+                mDeltas.add(delta);
+            }
+        });
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            addChild(new FakeCheckable(false));
+        }
+    }
+
+    @Test
+    public void multipleChoice() {
+        child(0).setChecked(true);
+        child(2).setChecked(true);
+        child(3).setChecked(true);
+        assertEquals(3, mController.getCheckedCount());
+        assertEquals(Arrays.asList(0, 2, 3), mController.getCheckedIndices());
+        assertEquals(Arrays.asList(child(0), child(2), child(3)), mController.getCheckedViews());
+        assertEquals(3, mDeltas.size());
+
+        child(2).setChecked(false);
+        assertFalse(mController.isChecked(2));
+        assertArrayEquals(new int[] {2}, lastDelta().getRemovedPositions());
+    }
+
+    @Test
+    public void singleChoiceUnchecksPrevious() {
+        mController.setChoiceMode(CheckableGroupController.CHOICE_MODE_SINGLE);
+        child(1).setChecked(true);
+        child(3).setChecked(true);
+        assertFalse(child(1).isChecked());
+        assertEquals(Arrays.asList(3), mController.getCheckedIndices());
+        // the swap is notified at once
+        assertArrayEquals(new int[] {3}, lastDelta().getAddedPositions());
+        assertArrayEquals(new int[] {1}, lastDelta().getRemovedPositions());
+    }
+
+    @Test
+    public void singleChoiceTrimsCheckedChildren() {
+        child(1).setChecked(true);
+        child(3).setChecked(true);
+        mController.setChoiceMode(CheckableGroupController.CHOICE_MODE_SINGLE);
+        assertEquals(Arrays.asList(1), mController.getCheckedIndices());
+        child(4).setChecked(true);
+        assertEquals(Arrays.asList(4), mController.getCheckedIndices());
+    }
+
+    @Test
+    public void limitedChoiceRejectsBeyondLimit() {
+        mController.setChoiceMode(CheckableGroupController.CHOICE_MODE_MULTIPLE_LIMITED);
+        mController.setChoiceLimit(2);
+        child(0).setChecked(true);
+        child(1).setChecked(true);
+        mDeltas.clear();
+        child(2).setChecked(true);
+        assertFalse(child(2).isChecked());
+        assertEquals(2, mController.getCheckedCount());
+        assertTrue(mDeltas.isEmpty());
+
+        child(0).setChecked(false);
+        child(2).setChecked(true);
+        assertEquals(Arrays.asList(1, 2), mController.getCheckedIndices());
+    }
+
+    @Test
+    public void limitedChoiceUnchecksAddedChildBeyondLimit() {
+        mController.setChoiceMode(CheckableGroupController.CHOICE_MODE_MULTIPLE_LIMITED);
+        mController.setChoiceLimit(1);
+        child(0).setChecked(true);
+        FakeCheckable added = new FakeCheckable(true);
+        addChild(added);
+        assertFalse(added.isChecked());
+        assertEquals(1, mController.getCheckedCount());
+    }
+
+    @Test
+    public void loweringLimitKeepsFrontChildren() {
+        mController.setChoiceMode(CheckableGroupController.CHOICE_MODE_MULTIPLE_LIMITED);
+        mController.checkAll();
+        assertEquals(CHILD_COUNT, mController.getCheckedCount());
+        mController.setChoiceLimit(2);
+        assertEquals(Arrays.asList(0, 1), mController.getCheckedIndices());
+    }
+
+    @Test
+    public void nestedBatchNotifiesOnceAtOutermostCommit() {
+        mController.beginBatch();
+        child(0).setChecked(true);
+        mController.beginBatch();
+        child(1).setChecked(true);
+        child(4).setChecked(true);
+        mController.commit();
+        assertTrue(mDeltas.isEmpty());
+        child(4).setChecked(false);
+        mController.commit();
+        assertEquals(1, mDeltas.size());
+        assertArrayEquals(new int[] {0, 1}, lastDelta().getAddedPositions());
+        assertArrayEquals(new int[0], lastDelta().getRemovedPositions());
+    }
+
+    @Test
+    public void emptyBatchDoesNotNotify() {
+        mController.beginBatch();
+        child(2).setChecked(true);
+        child(2).setChecked(false);
+        mController.commit();
+        assertTrue(mDeltas.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitWithoutBatch() {
+        mController.commit();
+    }
+
+    @Test
+    public void setCheckedIndicesNotifiesOnce() {
+        child(0).setChecked(true);
+        mDeltas.clear();
+        mController.setCheckedIndices(new int[] {2, 3, 42});
+        assertEquals(Arrays.asList(2, 3), mController.getCheckedIndices());
+        assertEquals(1, mDeltas.size());
+        assertArrayEquals(new int[] {2, 3}, lastDelta().getAddedPositions());
+        assertArrayEquals(new int[] {0}, lastDelta().getRemovedPositions());
+    }
+
+    @Test
+    public void nonCheckableChildrenAreSkipped() {
+        addChild(new Object());
+        mController.checkAll();
+        assertEquals(CHILD_COUNT, mController.getCheckedCount());
+        assertFalse(mController.isChecked(CHILD_COUNT));
+    }
+
+    @Test
+    public void removedChildShiftsCheckedIndices() {
+        child(3).setChecked(true);
+        Object removed = mChildren.remove(1);
+        mController.onChildRemoved(removed);
+        assertEquals(Arrays.asList(2), mController.getCheckedIndices());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownChoiceMode() {
+        mController.setChoiceMode(0);
+    }
+
+    private void addChild(Object child) {
+        mChildren.add(child);
+        if (child instanceof FakeCheckable) {
+            ((FakeCheckable) child).mController = mController;
+        }
+        mController.onChildAdded(child, mChildren.size() - 1);
+    }
+
+    private FakeCheckable child(int index) {
+        return (FakeCheckable) mChildren.get(index);
+    }
+
+    private CheckedStateDelta lastDelta() {
+        return mDeltas.get(mDeltas.size() - 1);
+    }
+
+    private class FakeHost implements CheckableGroupController.Host {
+        @Override
+        public int getChildCount() {
+            return mChildren.size();
+        }
+
+        @Override
+        public Object getChildAt(int index) {
+            return index >= 0 && index < mChildren.size() ? mChildren.get(index) : null;
+        }
+
+        @Override
+        public int getChildId(int index) {
+            return index + 1;
+        }
+    }
+
+    /**
+     * Notifies its checked state changes to the controller, as the children observed by the groups do.
+     */
+    private static class FakeCheckable implements Checkable {
+        private CheckableGroupController<FakeCheckable> mController;
+        private boolean mChecked;
+
+        FakeCheckable(boolean checked) {
+            mChecked = checked;
+        }
+
+        @Override
+        public void setChecked(boolean checked) {
+            if (mChecked == checked) {
+                return;
+            }
+            mChecked = checked;
+            if (mController != null) {
+                mController.onChildCheckedChanged(this, checked);
+            }
+        }
+
+        @Override
+        public boolean isChecked() {
+            return mChecked;
+        }
+
+        @Override
+        public void toggle() {
+            setChecked(!mChecked);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package jp.co.nohana.core.widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author nohana Team
+ */
+public class CheckedStateDeltaTest {
+    @Test
+    public void positions() {
+        CheckedStateDelta delta = new CheckedStateDelta(new int[] {1, 3}, new int[] {2});
+        assertArrayEquals(new int[] {1, 3}, delta.getAddedPositions());
+        assertArrayEquals(new int[] {2}, delta.getRemovedPositions());
+        assertFalse(delta.isEmpty());
+    }
+
+    @Test
+    public void empty() {
+        assertTrue(new CheckedStateDelta(new int[0], new int[0]).isEmpty());
+        assertFalse(new CheckedStateDelta(new int[0], new int[] {0}).isEmpty());
+    }
+}
@@ -0,0 +1,130 @@
+package jp.co.nohana.core.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author nohana Team
+ */
+public class CheckedStateIndexTest {
+    private CheckedStateIndex<Object> mIndex;
+    private Object[] mChildren;
+
+    @Before
+    public void setUp() {
+        mIndex = new CheckedStateIndex<Object>();
+        mChildren = new Object[5];
+        for (int i = 0; i < mChildren.length; i++) {
+            mChildren[i] = new Object();
+            mIndex.onChildAdded(mChildren[i], i, i % 2 == 0);
+        }
+    }
+
+    @Test
+    public void appendKeepsPositions() {
+        for (int i = 0; i < mChildren.length; i++) {
+            assertEquals(i, mIndex.getPosition(mChildren[i]));
+        }
+        assertArrayEquals(new int[] {0, 2, 4}, mIndex.getCheckedPositions());
+        assertEquals(3, mIndex.getCheckedCount());
+    }
+
+    @Test
+    public void insertShiftsFollowingPositions() {
+        Object child = new Object();
+        mIndex.onChildAdded(child, 1, true);
+        assertEquals(0, mIndex.getPosition(mChildren[0]));
+        assertEquals(1, mIndex.getPosition(child));
+        assertEquals(2, mIndex.getPosition(mChildren[1]));
+        assertEquals(5, mIndex.getPosition(mChildren[4]));
+        assertArrayEquals(new int[] {0, 1, 3, 5}, mIndex.getCheckedPositions());
+        assertEquals(4, mIndex.getCheckedCount());
+    }
+
+    @Test
+    public void removeShiftsFollowingPositions() {
+        mIndex.onChildRemoved(mChildren[2]);
+        assertEquals(-1, mIndex.getPosition(mChildren[2]));
+        assertEquals(1, mIndex.getPosition(mChildren[1]));
+        assertEquals(2, mIndex.getPosition(mChildren[3]));
+        assertEquals(3, mIndex.getPosition(mChildren[4]));
+        assertArrayEquals(new int[] {0, 3}, mIndex.getCheckedPositions());
+        assertEquals(2, mIndex.getCheckedCount());
+    }
+
+    @Test
+    public void removeUnknownChildIsIgnored() {
+        mIndex.onChildRemoved(new Object());
+        assertEquals(3, mIndex.getCheckedCount());
+    }
+
+    @Test
+    public void toggleReturnsPositionOnlyWhenChanged() {
+        assertEquals(1, mIndex.onChildCheckedChanged(mChildren[1], true));
+        assertEquals(-1, mIndex.onChildCheckedChanged(mChildren[1], true));
+        assertEquals(-1, mIndex.onChildCheckedChanged(new Object(), true));
+        assertTrue(mIndex.isChecked(1));
+        assertEquals(4, mIndex.getCheckedCount());
+    }
+
+    @Test
+    public void nextCheckedPosition() {
+        assertEquals(0, mIndex.nextCheckedPosition(0));
+        assertEquals(2, mIndex.nextCheckedPosition(1));
+        assertEquals(-1, mIndex.nextCheckedPosition(5));
+        assertFalse(mIndex.isChecked(-1));
+    }
+
+    @Test
+    public void batchCoalescesChanges() {
+        mIndex.beginBatch();
+        mIndex.onChildCheckedChanged(mChildren[1], true);
+        mIndex.onChildCheckedChanged(mChildren[0], false);
+        mIndex.onChildCheckedChanged(mChildren[3], true);
+        // reverted in the same batch
+        mIndex.onChildCheckedChanged(mChildren[3], false);
+        assertTrue(mIndex.endBatch());
+        CheckedStateDelta delta = mIndex.takeDelta();
+        assertArrayEquals(new int[] {1}, delta.getAddedPositions());
+        assertArrayEquals(new int[] {0}, delta.getRemovedPositions());
+        assertTrue(mIndex.takeDelta().isEmpty());
+    }
+
+    @Test
+    public void nestedBatchEndsAtOutermost() {
+        mIndex.beginBatch();
+        mIndex.beginBatch();
+        mIndex.onChildCheckedChanged(mChildren[1], true);
+        assertFalse(mIndex.endBatch());
+        assertTrue(mIndex.isInBatch());
+        assertTrue(mIndex.endBatch());
+        assertFalse(mIndex.isInBatch());
+    }
+
+    @Test
+    public void revertedBatchHasNothingToNotify() {
+        mIndex.beginBatch();
+        mIndex.onChildCheckedChanged(mChildren[1], true);
+        mIndex.onChildCheckedChanged(mChildren[1], false);
+        assertFalse(mIndex.endBatch());
+    }
+
+    @Test
+    public void pendingDeltaFollowsInsertedChild() {
+        mIndex.beginBatch();
+        mIndex.onChildCheckedChanged(mChildren[1], true);
+        mIndex.onChildAdded(new Object(), 0, false);
+        assertTrue(mIndex.endBatch());
+        assertArrayEquals(new int[] {2}, mIndex.takeDelta().getAddedPositions());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endBatchWithoutBegin() {
+        mIndex.endBatch();
+    }
+}
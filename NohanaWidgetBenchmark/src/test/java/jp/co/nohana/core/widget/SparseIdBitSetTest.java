@@ -0,0 +1,65 @@
+package jp.co.nohana.core.widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author nohana Team
+ */
+public class SparseIdBitSetTest {
+    @Test
+    public void setAndClearReportChanges() {
+        SparseIdBitSet bits = new SparseIdBitSet();
+        assertTrue(bits.set(3));
+        assertFalse(bits.set(3));
+        assertTrue(bits.get(3));
+        assertEquals(1, bits.cardinality());
+        assertTrue(bits.clear(3));
+        assertFalse(bits.clear(3));
+        assertFalse(bits.get(3));
+        assertEquals(0, bits.cardinality());
+    }
+
+    @Test
+    public void sparseIdsAreSorted() {
+        SparseIdBitSet bits = new SparseIdBitSet();
+        long[] ids = {Long.MAX_VALUE, 1L << 40, 64, 63, 0, -1, Long.MIN_VALUE, 1000000007L};
+        for (long id : ids) {
+            bits.set(id);
+        }
+        assertEquals(ids.length, bits.cardinality());
+        assertArrayEquals(new long[] {Long.MIN_VALUE, -1, 0, 63, 64, 1000000007L, 1L << 40, Long.MAX_VALUE}, bits.toArray());
+        assertFalse(bits.get(65));
+        assertFalse(bits.get(-2));
+    }
+
+    @Test
+    public void clearingLastBitOfWordKeepsOthers() {
+        SparseIdBitSet bits = new SparseIdBitSet();
+        for (long id = 0; id < 10 * 64; id += 64) {
+            bits.set(id);
+        }
+        bits.clear(3 * 64);
+        assertFalse(bits.get(3 * 64));
+        assertTrue(bits.get(4 * 64));
+        assertEquals(9, bits.cardinality());
+        bits.set(3 * 64 + 1);
+        assertTrue(bits.get(3 * 64 + 1));
+        assertEquals(10, bits.toArray().length);
+    }
+
+    @Test
+    public void clearAll() {
+        SparseIdBitSet bits = new SparseIdBitSet();
+        bits.set(1);
+        bits.set(1000);
+        bits.clear();
+        assertEquals(0, bits.cardinality());
+        assertFalse(bits.get(1));
+        assertEquals(0, bits.toArray().length);
+    }
+}